@@ -0,0 +1,97 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Startup path: reading cached metadata, parsing filenames and building MovieInfos
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryLoadBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SyntheticLibrary library;
+    private File cacheDir;
+    private List<MovieInfo> parsed;
+    private HashMap<String, String> subtitleFilePaths;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        library = new SyntheticLibrary(size);
+        cacheDir = Files.createTempDirectory("movieBrowserBenchmark").toFile();
+        try (MetadataStore store = MetadataStore.open(cacheDir)) {
+            for (int i = 0; i < size; i++) {
+                store.put(library.fileNames.get(i), library.responses.get(i));
+            }
+        }
+        parsed = library.movieInfos();
+        subtitleFilePaths = new HashMap<>();
+        for (int i = 0; i < size; i += 10) {
+            String fileName = library.fileNames.get(i);
+            subtitleFilePaths.put(fileName.substring(0, fileName.lastIndexOf('.')).toLowerCase(), "/subs/" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(cacheDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int openMetadataStore() throws IOException {
+        try (MetadataStore store = MetadataStore.open(cacheDir)) {
+            return store.entryCount();
+        }
+    }
+
+    // The equivalent of the old per-file readCacheFile: every cached response read and turned into a MovieInfo
+    @Benchmark
+    public void readCachedMetadata(Blackhole blackhole) throws Exception {
+        try (MetadataStore store = MetadataStore.open(cacheDir)) {
+            for (int i = 0; i < size; i++) {
+                blackhole.consume(FileManager.parseResponse(store.getStream(library.fileNames.get(i)),
+                        library.years.get(i), library.titles.get(i), library.fileNames.get(i), null));
+            }
+        }
+    }
+
+    @Benchmark
+    public void parseFileNames(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(MetadataResolver.createRequest(new File(library.folders.get(i), library.fileNames.get(i)),
+                    subtitleFilePaths));
+        }
+    }
+
+    @Benchmark
+    public void constructMovieInfos(Blackhole blackhole) {
+        for (MovieInfo m : parsed) {
+            blackhole.consume(new MovieInfo(m.title, m.year(), String.join(", ", m.genres()), m.plot,
+                    m.posterURL, m.absolutePath, m.subtitleAbsolutePath, m.imdbRating(), m.director(), m.runtime));
+        }
+    }
+
+    @Benchmark
+    public Library buildLibrary() {
+        Library built = new Library(size);
+        for (int i = 0; i < size; i++) {
+            built.add(parsed.get(i), library.folders.get(i));
+        }
+        return built;
+    }
+}
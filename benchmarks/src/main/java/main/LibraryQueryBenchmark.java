@@ -0,0 +1,79 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What NodeManager does on every folder, genre, sort or search change, minus the JavaFX view update
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryQueryBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Library library;
+    private BitSet all;
+    private final BitSet searchMatches = new BitSet();
+    private final BitSet visible = new BitSet();
+    private final HashMap<String, Integer> counts = new HashMap<>();
+    private int sortOrder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        library = new SyntheticLibrary(size).library();
+        all = new BitSet();
+        library.facetIndex.select(FacetIndex.ALL, FacetIndex.ALL, null, all);
+        library.sortIndex.order(SortOrder.TITLE, all); // Build the permutations outside the measurement
+    }
+
+    @Benchmark
+    public BitSet filterFolderAndGenre() {
+        library.facetIndex.select("Folder 7", "Drama", null, visible);
+        return visible;
+    }
+
+    @Benchmark
+    public HashMap<String, Integer> countFacets() {
+        library.facetIndex.countFolders("Drama", null, counts);
+        library.facetIndex.countGenres("Folder 7", null, counts);
+        return counts;
+    }
+
+    @Benchmark
+    public List<MovieInfo> changeSortOrder() {
+        SortOrder[] orders = SortOrder.values();
+        sortOrder = (sortOrder + 1) % orders.length;
+        return library.sortIndex.order(orders[sortOrder], all);
+    }
+
+    @Benchmark
+    public int[] searchTwoTerms() {
+        return library.searchIndex.search("dark ni");
+    }
+
+    @Benchmark
+    public int[] searchShortPrefix() {
+        return library.searchIndex.search("s");
+    }
+
+    // A full keystroke: search, facet selection and the ordered result list
+    @Benchmark
+    public List<MovieInfo> searchFilterAndSort() {
+        library.searchIndex.search("love", searchMatches);
+        library.facetIndex.select(FacetIndex.ALL, "Drama", searchMatches, visible);
+        return library.sortIndex.order(SortOrder.YEAR_ASCENDING, visible);
+    }
+
+    @Benchmark
+    public int rebuildSortPermutations() {
+        library.sortIndex.invalidate();
+        return library.sortIndex.order(SortOrder.TITLE, all).size();
+    }
+}
@@ -0,0 +1,95 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic fake libraries for the benchmarks: filenames in the "YYYY - Title.ext" convention and matching OMDb
+// responses with realistic field sizes and value distributions.
+class SyntheticLibrary {
+    private static final String[] WORDS = {"the", "dark", "night", "love", "war", "star", "man", "woman", "city",
+            "house", "red", "blue", "last", "first", "river", "king", "ghost", "road", "summer", "winter", "secret",
+            "life", "death", "dream", "game", "island", "shadow", "fire", "stone", "heart"};
+    private static final String[] GENRES = {"Action", "Adventure", "Animation", "Biography", "Comedy", "Crime",
+            "Documentary", "Drama", "Family", "Fantasy", "History", "Horror", "Music", "Musical", "Mystery",
+            "Romance", "Sci-Fi", "Sport", "Thriller", "War", "Western"};
+    private static final String[] EXTENSIONS = {"mkv", "mp4", "avi"};
+    static final int FOLDERS = 40;
+
+    final List<String> titles;
+    final List<String> years;
+    final List<String> fileNames;
+    final List<String> folders;
+    final List<String> responses;
+
+    SyntheticLibrary(int size) {
+        Random random = new Random(size);
+        titles = new ArrayList<>(size);
+        years = new ArrayList<>(size);
+        fileNames = new ArrayList<>(size);
+        folders = new ArrayList<>(size);
+        responses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String title = capitalize(word(random)) + " " + word(random) + " " + word(random) + " " + i;
+            String year = Integer.toString(1930 + random.nextInt(90));
+            titles.add(title);
+            years.add(year);
+            fileNames.add(year + " - " + title + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            folders.add("Folder " + random.nextInt(FOLDERS));
+            responses.add(response(random, title, year));
+        }
+    }
+
+    List<MovieInfo> movieInfos() throws IOException {
+        List<MovieInfo> movieInfos = new ArrayList<>(titles.size());
+        for (int i = 0; i < titles.size(); i++) {
+            byte[] response = responses.get(i).getBytes(StandardCharsets.UTF_8);
+            movieInfos.add(FileManager.parseResponse(new ByteArrayInputStream(response), years.get(i), titles.get(i),
+                    "/movies/" + folders.get(i) + "/" + fileNames.get(i), null));
+        }
+        return movieInfos;
+    }
+
+    Library library() throws IOException {
+        List<MovieInfo> movieInfos = movieInfos();
+        Library library = new Library(movieInfos.size());
+        for (int i = 0; i < movieInfos.size(); i++) {
+            library.add(movieInfos.get(i), folders.get(i));
+        }
+        return library;
+    }
+
+    private static String response(Random random, String title, String year) {
+        if (random.nextInt(50) == 0) {
+            return "{\"Response\":\"False\",\"Error\":\"Movie not found!\"}";
+        }
+        StringBuilder plot = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            plot.append(i == 0 ? capitalize(word(random)) : word(random)).append(i == 29 ? "." : " ");
+        }
+        String genres = GENRES[random.nextInt(GENRES.length)] + ", " + GENRES[random.nextInt(GENRES.length)];
+        String rating = random.nextInt(20) == 0 ? "N/A" : (1 + random.nextInt(9)) + "." + random.nextInt(10);
+        return "{\"Title\":\"" + title + "\",\"Year\":\"" + year + "\",\"Rated\":\"R\",\"Released\":\"01 Jan "
+                + year + "\",\"Runtime\":\"" + (70 + random.nextInt(110)) + " min\",\"Genre\":\"" + genres
+                + "\",\"Director\":\"" + capitalize(word(random)) + " " + capitalize(word(random))
+                + "\",\"Writer\":\"Someone\",\"Actors\":\"A, B, C\",\"Plot\":\"" + plot
+                + "\",\"Language\":\"English\",\"Country\":\"USA\",\"Awards\":\"N/A\",\"Poster\":"
+                + "\"https://m.media-amazon.com/images/M/" + Long.toHexString(random.nextLong()) + "._V1_SX300.jpg\","
+                + "\"Ratings\":[{\"Source\":\"Internet Movie Database\",\"Value\":\"" + rating + "/10\"}],"
+                + "\"Metascore\":\"N/A\",\"imdbRating\":\"" + rating + "\",\"imdbVotes\":\"1,234\","
+                + "\"imdbID\":\"tt" + (1000000 + random.nextInt(8999999)) + "\",\"Type\":\"movie\","
+                + "\"DVD\":\"N/A\",\"BoxOffice\":\"N/A\",\"Production\":\"N/A\",\"Website\":\"N/A\","
+                + "\"Response\":\"True\"}";
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
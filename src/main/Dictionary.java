@@ -0,0 +1,72 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interns strings that repeat across the library (genres, directors, search tokens, ...) so each distinct value is
+// stored once and movies hold small int codes instead. Safe to use from the resolver threads.
+class Dictionary {
+    static final Dictionary GENRES = new Dictionary(Long.SIZE);
+    static final Dictionary DIRECTORS = new Dictionary(Integer.MAX_VALUE);
+    static final Dictionary TOKENS = new Dictionary(Integer.MAX_VALUE);
+    static final Dictionary FOLDERS = new Dictionary(Integer.MAX_VALUE);
+    // Short values such as years, ratings and "N/A"
+    static final Dictionary VALUES = new Dictionary(Integer.MAX_VALUE);
+
+    static final int FULL = -1;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Integer> codes;
+    private volatile String[] values;
+    private int size;
+
+    Dictionary(int capacity) {
+        this.capacity = capacity;
+        codes = new ConcurrentHashMap<>();
+        values = new String[16];
+    }
+
+    // Returns the code for value, adding it if needed, or FULL if the dictionary has no room left
+    int intern(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (size == capacity) {
+                return FULL;
+            }
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            values = current;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    // Returns the code for value, or FULL if it was never interned
+    int code(String value) {
+        Integer code = codes.get(value);
+        return code == null ? FULL : code;
+    }
+
+    String get(int code) {
+        return values[code];
+    }
+
+    // Every value in code order, so that values()[code] == get(code)
+    synchronized String[] values() {
+        return Arrays.copyOf(values, size);
+    }
+
+    int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,122 @@
+package main;
+
+import java.util.*;
+
+// One bitset of movie ids per folder and per genre. Any combination of folder, genre and search results is a few
+// bitwise ANDs into a caller-owned bitset, so filtering allocates nothing.
+class FacetIndex {
+    static final String ALL = "All";
+
+    private final LinkedHashMap<String, BitSet> folders = new LinkedHashMap<>();
+    private final TreeMap<String, BitSet> genres = new TreeMap<>();
+    private final BitSet present = new BitSet();
+    private final BitSet scratch = new BitSet();
+
+    // Returns true if this added a new folder or genre
+    boolean add(MovieInfo movieInfo) {
+        boolean newFacet = !folders.containsKey(movieInfo.folder());
+        present.set(movieInfo.id);
+        facet(folders, movieInfo.folder()).set(movieInfo.id);
+        for (String genre : movieInfo.genres()) {
+            newFacet |= !genres.containsKey(genre);
+            facet(genres, genre).set(movieInfo.id);
+        }
+        return newFacet;
+    }
+
+    void remove(MovieInfo movieInfo) {
+        present.clear(movieInfo.id);
+        clear(folders, movieInfo.folder(), movieInfo.id);
+        for (String genre : movieInfo.genres()) {
+            clear(genres, genre, movieInfo.id);
+        }
+    }
+
+    Set<String> folders() {
+        return folders.keySet();
+    }
+
+    Set<String> genres() {
+        return genres.keySet();
+    }
+
+    // out = folder AND genre AND searchMatches, where "All" and a null searchMatches match everything
+    void select(String folder, String genre, BitSet searchMatches, BitSet out) {
+        out.clear();
+        BitSet folderIds = folder.equals(ALL) ? present : folders.get(folder);
+        if (folderIds == null) {
+            return;
+        }
+        out.or(folderIds);
+        if (!genre.equals(ALL)) {
+            BitSet genreIds = genres.get(genre);
+            if (genreIds == null) {
+                out.clear();
+                return;
+            }
+            out.and(genreIds);
+        }
+        if (searchMatches != null) {
+            out.and(searchMatches);
+        }
+    }
+
+    // Number of movies each folder would show with the given genre and search applied; "All" is the total
+    void countFolders(String genre, BitSet searchMatches, Map<String, Integer> counts) {
+        for (Map.Entry<String, BitSet> folder : folders.entrySet()) {
+            counts.put(folder.getKey(), count(folder.getValue(), genre.equals(ALL) ? null : genres.get(genre),
+                    searchMatches, !genre.equals(ALL)));
+        }
+        counts.put(ALL, count(present, genre.equals(ALL) ? null : genres.get(genre), searchMatches,
+                !genre.equals(ALL)));
+    }
+
+    // Number of movies each genre would show within the given folder and search; "All" is the total
+    void countGenres(String folder, BitSet searchMatches, Map<String, Integer> counts) {
+        BitSet folderIds = folder.equals(ALL) ? null : folders.get(folder);
+        boolean restricted = !folder.equals(ALL);
+        for (Map.Entry<String, BitSet> genre : genres.entrySet()) {
+            counts.put(genre.getKey(), count(genre.getValue(), folderIds, searchMatches, restricted));
+        }
+        counts.put(ALL, count(present, folderIds, searchMatches, restricted));
+    }
+
+    private int count(BitSet ids, BitSet restriction, BitSet searchMatches, boolean restricted) {
+        if (restricted && restriction == null) {
+            return 0;
+        }
+        if (restriction == null && searchMatches == null) {
+            return ids.cardinality();
+        }
+        scratch.clear();
+        scratch.or(ids);
+        if (restriction != null) {
+            scratch.and(restriction);
+        }
+        if (searchMatches != null) {
+            scratch.and(searchMatches);
+        }
+        int count = scratch.cardinality();
+        scratch.clear();
+        return count;
+    }
+
+    private static BitSet facet(Map<String, BitSet> facets, String name) {
+        BitSet ids = facets.get(name);
+        if (ids == null) {
+            ids = new BitSet();
+            facets.put(name, ids);
+        }
+        return ids;
+    }
+
+    private static void clear(Map<String, BitSet> facets, String name, int id) {
+        BitSet ids = facets.get(name);
+        if (ids != null) {
+            ids.clear(id);
+            if (ids.isEmpty()) {
+                facets.remove(name);
+            }
+        }
+    }
+}
@@ -2,29 +2,69 @@ package main;
 
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import org.apache.commons.io.FileUtils;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.*;
 import java.net.*;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 class FileManager {
     private String VLCLocation = "";
+    private PlayerController player;
     private static final String DATA_CACHE_DIR = ".movieBrowserCache";
+    private static final String UNMATCHED_REPORT = "unmatched.txt";
+    // Metadata store keys of MediaProbe results; OMDb answers are keyed by the bare fingerprint
+    private static final String MEDIA_KEY_PREFIX = "media:";
+    // Key of a file that can't be fingerprinted; unlike its bare name, its path is not shared with any other file
+    private static final String PATH_KEY_PREFIX = "path:";
     String VLC_PATH_CACHE;
-    private static final String API_URL = "http://www.omdbapi.com/?t=%s&y=%s&apikey=8b79c8d6";
+    private static final String API_URL = "https://www.omdbapi.com/?t=%s&y=%s&apikey=8b79c8d6";
+    // Answers age out: a found movie rarely changes, a "not found" may just have been a bad day at OMDb
+    private static final long POSITIVE_TTL_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long NEGATIVE_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private final OmdbClient omdbClient;
+    private final Set<String> staleKeys = ConcurrentHashMap.newKeySet();
+    private boolean snapshotCurrent;
+    // Absolute path -> mtime at scan time of every directory in the library
+    private Map<String, Long> directoryMtimes;
+    private MetadataStore metadataStore;
+    private Fingerprinter fingerprinter;
+    // Absolute path -> metadata store key of every movie looked up or restored so far
+    private final Map<String, String> cacheKeys = new ConcurrentHashMap<>();
+    // File name -> how many movie files in the library have it
+    private final Map<String, Integer> movieNameCounts = new ConcurrentHashMap<>();
+    private LibraryScanner scanner;
+    private ThumbnailCache thumbnailCache;
+    private final File cacheDir;
 
     FileManager() {
-        VLC_PATH_CACHE = DATA_CACHE_DIR + String.format("/.%s-vlcPath.cache", getMacAddress());
+        this(System.getProperty("movieBrowser.apiUrl", API_URL));
+    }
+
+    FileManager(String apiURL) {
+        this(new OmdbClient(apiURL));
+    }
+
+    FileManager(OmdbClient omdbClient) {
+        this(omdbClient, new File(DATA_CACHE_DIR));
+    }
+
+    FileManager(OmdbClient omdbClient, File cacheDir) {
+        this.omdbClient = omdbClient;
+        this.cacheDir = cacheDir;
+        VLC_PATH_CACHE = new File(cacheDir, String.format(".%s-vlcPath.cache", getMacAddress())).getPath();
     }
 
     String getMacAddress() {
         try {
             InetAddress ip = InetAddress.getLocalHost();
             NetworkInterface networkInterface = NetworkInterface.getByInetAddress(ip);
-            byte[] mac = networkInterface.getHardwareAddress();
+            byte[] mac = networkInterface == null ? null : networkInterface.getHardwareAddress();
+            if (mac == null) { // Loopback-only or virtual interface, e.g. on a headless box
+                return "";
+            }
             StringBuilder sb = new StringBuilder();
             for (int i = 0; i < mac.length; i++) {
                 sb.append(String.format("%02X%s", mac[i], (i < mac.length - 1) ? "-" : ""));
@@ -35,58 +75,168 @@ class FileManager {
         }
         return "";
     }
-    Collection<File> getMovieFiles() {
-        File dir = new File(".");
-        return FileUtils.listFiles(
-                dir,
-                new String[]{"mkv", "mp4", "avi", "VOB", "mpg"},
-                true
-        );
+    LibraryScanner.ScanResult scanLibrary() {
+        PerfEvents.LibraryScan event = new PerfEvents.LibraryScan();
+        event.begin();
+        long start = System.nanoTime();
+        scanner = new LibraryScanner(libraryRoots(), cacheDir);
+        LibraryScanner.ScanResult scanResult = scanner.scan();
+        countMovieNames(scanResult.movieFiles);
+        Metrics.INSTANCE.scanTime.recordSince(start);
+        event.movieFiles = scanResult.movieFiles.size();
+        event.directories = scanResult.directories.size();
+        event.changedDirectories = scanResult.changedDirectories.size();
+        event.unavailableRoots = scanResult.unavailableRoots.size();
+        event.commit();
+        return scanResult;
     }
 
-    Collection<File> getSubtitleFiles() {
-        File dir = new File(".");
-        return FileUtils.listFiles(
-                dir,
-                new String[]{"srt", "sub"},
-                true
-        );
+    // movieBrowser.roots lists the library's directories, separated like a class path; by default the library is the
+    // working directory
+    static List<File> libraryRoots() {
+        Set<File> roots = new LinkedHashSet<>();
+        for (String root : System.getProperty("movieBrowser.roots", ".").split(File.pathSeparator)) {
+            if (!root.trim().isEmpty()) {
+                roots.add(new File(root.trim()));
+            }
+        }
+        return new ArrayList<>(roots);
     }
 
-    private void cacheResponse(String response, File cacheFile) {
-        try {
-            FileWriter fileWriter = new FileWriter(cacheFile);
-            fileWriter.write(response);
-            fileWriter.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Movies of directories unchanged since the last snapshot, ready to show as they are. Movie files the snapshot
+    // cannot vouch for are added to unresolved and need a normal lookup.
+    List<MovieInfo> restoreLibrary(LibraryScanner.ScanResult scanResult, Map<String, String> subtitleFilePaths,
+                                   List<File> unresolved) {
+        LibrarySnapshot snapshot = LibrarySnapshot.read(cacheDir);
+        // Subtitles are matched across the whole library, so any changed directory may have moved one
+        boolean relinkSubtitles = !scanResult.changedDirectories.isEmpty();
+        Map<File, List<File>> movieFilesByDirectory = new LinkedHashMap<>();
+        for (File movieFile : scanResult.movieFiles) {
+            movieFilesByDirectory.computeIfAbsent(movieFile.getParentFile(), d -> new ArrayList<>()).add(movieFile);
+        }
+
+        directoryMtimes = new HashMap<>();
+        for (File directory : scanResult.directories) {
+            LibraryScanner.DirectoryEntry directoryEntry = scanner.getDirectoryEntry(directory);
+            if (directoryEntry != null) {
+                directoryMtimes.put(directory.getAbsolutePath(), directoryEntry.lastModified);
+            }
+        }
+
+        List<MovieInfo> restored = new ArrayList<>(scanResult.movieFiles.size());
+        int restoredDirectories = 0;
+        for (Map.Entry<File, List<File>> directory : movieFilesByDirectory.entrySet()) {
+            Long lastModified = directoryMtimes.get(directory.getKey().getAbsolutePath());
+            List<LibrarySnapshot.Entry> entries = lastModified == null ? null
+                    : snapshot.get(directory.getKey(), lastModified);
+            if (entries == null) {
+                unresolved.addAll(directory.getValue());
+                continue;
+            }
+            restoredDirectories++;
+            Map<String, LibrarySnapshot.Entry> entriesByPath = new HashMap<>();
+            for (LibrarySnapshot.Entry entry : entries) {
+                entriesByPath.put(entry.movieInfo.absolutePath, entry);
+            }
+            for (File movieFile : directory.getValue()) {
+                LibrarySnapshot.Entry entry = entriesByPath.get(movieFile.getAbsolutePath());
+                // Never cached, or refreshed since the snapshot was taken
+                if (entry == null || entry.fetchedAt < 0
+                        || entry.fetchedAt != metadataStore.fetchedAt(entry.cacheKey)) {
+                    unresolved.add(movieFile);
+                    continue;
+                }
+                MovieInfo movieInfo = entry.movieInfo;
+                if (relinkSubtitles) {
+                    movieInfo.subtitleAbsolutePath = MetadataResolver.subtitleFor(movieFile, subtitleFilePaths);
+                }
+                movieInfo.setFolder(directory.getKey().getName());
+                cacheKeys.put(movieInfo.absolutePath, entry.cacheKey);
+                markIfStale(entry.cacheKey, PosterLoader.NOT_FOUND_URL.equals(movieInfo.posterURL),
+                        entry.fetchedAt);
+                restored.add(movieInfo);
+            }
         }
+        snapshotCurrent = unresolved.isEmpty() && !relinkSubtitles
+                && restoredDirectories == snapshot.directoryCount();
+        return restored;
     }
 
-    private void launchVLC(String absolutePath) {
-        ProcessBuilder pb = new ProcessBuilder(VLCLocation, absolutePath);
-        try {
-            pb.start();
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Call before any background refresh starts, so that every saved movie matches its metadata entry
+    void saveLibrary(Collection<MovieInfo> movieInfos) {
+        if (snapshotCurrent) {
+            return;
+        }
+        List<LibrarySnapshot.Entry> entries = new ArrayList<>(movieInfos.size());
+        for (MovieInfo movieInfo : movieInfos) {
+            String cacheKey = cacheKeys.get(movieInfo.absolutePath);
+            if (cacheKey != null) {
+                entries.add(new LibrarySnapshot.Entry(movieInfo, cacheKey, metadataStore.fetchedAt(cacheKey)));
+            }
         }
+        LibrarySnapshot.write(cacheDir, directoryMtimes, entries);
+        snapshotCurrent = true;
     }
 
-    private void launchVLC(String absolutePath, String subtitleAbsolutePath) {
-        ProcessBuilder pb = new ProcessBuilder(VLCLocation, absolutePath, "--sub-file=" + subtitleAbsolutePath);
-        try {
-            pb.start();
+    // Lists every file no naming convention understood in .movieBrowserCache/unmatched.txt, one path per line, and
+    // removes the list once there are none
+    void writeUnmatchedReport(FileNameParser.Report report) {
+        File reportFile = new File(cacheDir, UNMATCHED_REPORT);
+        if (report.unmatched.isEmpty()) {
+            reportFile.delete();
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(reportFile)))) {
+            for (File f : report.unmatched) {
+                out.println(f.getPath());
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    void playMovie(String absolutePath, String subtitleAbsolutePath){
-        if(subtitleAbsolutePath == null) {
-            launchVLC(absolutePath);
+    // Roots that missed the scan's deadline, as their walks finish; blocks until the last one has
+    void awaitLateRoots(Consumer<LibraryScanner.ScanResult> onWalked) {
+        scanner.awaitLateRoots(late -> {
+            countMovieNames(late.movieFiles);
+            onWalked.accept(late);
+        });
+    }
+
+    private void countMovieNames(List<File> movieFiles) {
+        for (File movieFile : movieFiles) {
+            movieNameCounts.merge(movieFile.getName(), 1, Integer::sum);
         }
-        else {
-            launchVLC(absolutePath, subtitleAbsolutePath);
+    }
+
+    LibraryWatcher watchLibrary(LibraryScanner.ScanResult scanResult, LibraryWatcher.Listener listener)
+            throws IOException {
+        LibraryWatcher watcher = new LibraryWatcher(scanner, scanResult, listener);
+        watcher.start();
+        return watcher;
+    }
+
+    // Started on first use and again whenever VLC's location changes
+    private synchronized PlayerController player() {
+        if (player == null) {
+            player = new PlayerController(PlayerController.vlc(VLCLocation));
+        }
+        return player;
+    }
+
+    void playMovie(String absolutePath, String subtitleAbsolutePath){
+        player().play(absolutePath, subtitleAbsolutePath);
+    }
+
+    void queueMovie(String absolutePath, String subtitleAbsolutePath) {
+        player().enqueue(absolutePath, subtitleAbsolutePath);
+    }
+
+    // Stops the player, if one was started; the next movie starts a new one
+    synchronized void closePlayer() {
+        if (player != null) {
+            player.close();
+            player = null;
         }
     }
 
@@ -95,6 +245,7 @@ class FileManager {
         fileChooser.setTitle("Setup - Select VLC.exe");
         File selectedFile = fileChooser.showOpenDialog(primaryStage);
         VLCLocation = selectedFile.getAbsolutePath();
+        closePlayer();
 
         try {
             FileWriter fileWriter = new FileWriter(pathCache);
@@ -122,77 +273,164 @@ class FileManager {
     }
 
     void createCacheIfNoneExists() {
-        File cacheDir = new File(DATA_CACHE_DIR);
         if(!cacheDir.exists() || !cacheDir.isDirectory()) {
             cacheDir.mkdir();
         }
     }
 
-    private MovieInfo readCacheFile(File cacheFile, String absolutePath, String subtitleAbsolutePath) throws Exception {
-        BufferedReader in = new BufferedReader(
-                new FileReader(cacheFile));
-        String inputLine;
-        StringBuilder response = new StringBuilder();
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+    synchronized ThumbnailCache getThumbnailCache() {
+        if (thumbnailCache == null) {
+            thumbnailCache = new ThumbnailCache(cacheDir);
+        }
+        return thumbnailCache;
+    }
+
+    void openMetadataStore() throws IOException {
+        metadataStore = MetadataStore.open(cacheDir);
+        fingerprinter = new Fingerprinter(metadataStore);
+    }
+
+    // Safe to call whether or not the store was ever opened
+    void closeMetadataStore() throws IOException {
+        if (metadataStore != null) {
+            metadataStore.close();
         }
-        in.close();
-        JSONObject jsonResponse =  new JSONObject(response.toString());
-        cacheResponse(response.toString(), cacheFile);
-        if(jsonResponse.has("Error")) {
-            return new MovieInfo(cacheFile.getName().substring(8, cacheFile.getName().length() - 9),
-                    cacheFile.getName().substring(1, 5), "", "",  "file:.style/filenotfound.png",
-                    absolutePath, subtitleAbsolutePath, "", "", 0);
+    }
+
+    // Cached responses keep the title and year OMDb matched; not-found entries fall back to the filename's
+    static MovieInfo parseResponse(InputStream response, String year, String title, String absolutePath,
+                                   String subtitleAbsolutePath) throws IOException {
+        return cachedMovieInfo(OmdbResponse.parse(response), year, title, absolutePath, subtitleAbsolutePath);
+    }
+
+    private static MovieInfo cachedMovieInfo(OmdbResponse omdbResponse, String year, String title,
+                                             String absolutePath, String subtitleAbsolutePath) {
+        if (omdbResponse.isError()) {
+            return omdbResponse.toMovieInfo(title, year, absolutePath, subtitleAbsolutePath);
         }
-        return new MovieInfo(jsonResponse.getString("Title"), jsonResponse.getString("Year"),
-                jsonResponse.getString("Genre"), jsonResponse.getString("Plot"),
-                jsonResponse.getString("Poster"), absolutePath, subtitleAbsolutePath,
-                jsonResponse.getString("imdbRating"), jsonResponse.getString("Director"),
-                Integer.parseInt(jsonResponse.getString("Runtime").split(" ")[0]));
+        return omdbResponse.toMovieInfo(omdbResponse.title, omdbResponse.year, absolutePath, subtitleAbsolutePath);
     }
 
     private MovieInfo sendAPIRequest(String year, String title, String originalTitle, String absolutePath,
-                                     File cacheFile, String subtitleAbsolutePath) {
+                                     String cacheKey, String subtitleAbsolutePath) throws IOException {
+        OmdbClient.Answer answer = omdbClient.lookup(title, year);
+        metadataStore.put(cacheKey, answer.body);
+        staleKeys.remove(cacheKey);
+        return answer.response.toMovieInfo(originalTitle, year, absolutePath, subtitleAbsolutePath);
+    }
+
+    // False after a failed lookup, which is retried on the next start
+    boolean isMetadataCached(File f) {
+        String cacheKey = cacheKeys.get(f.getAbsolutePath());
+        return cacheKey != null && metadataStore.contains(cacheKey);
+    }
+
+    // The file's content fingerprint, so renaming or moving it keeps its entry. A file that can't be read falls back
+    // to its absolute path.
+    private String cacheKey(File f) {
+        String cacheKey;
         try {
-            URL url = new URL(String.format(API_URL, title, year));
-            HttpURLConnection con = (HttpURLConnection)url.openConnection();
-            con.setRequestProperty("Accept", "application/json");
-
-            BufferedReader in = new BufferedReader(
-                    new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            StringBuilder response = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
-            }
-            in.close();
-            JSONObject jsonResponse = new JSONObject(response.toString());
-            cacheResponse(response.toString(), cacheFile);
-            if(jsonResponse.has("Error")) {
-                return new MovieInfo(originalTitle, year, "", "",  "file:.style/filenotfound.png",
-                        absolutePath, subtitleAbsolutePath, "", "", 0);
-            }
-            return new MovieInfo(originalTitle, year, jsonResponse.getString("Genre"),
-                    jsonResponse.getString("Plot"), jsonResponse.getString("Poster"), absolutePath,
-                    subtitleAbsolutePath, jsonResponse.getString("imdbRating"), jsonResponse.getString("Director"),
-                    Integer.parseInt(jsonResponse.getString("Runtime").split(" ")[0]));
-        } catch (IOException | JSONException e) {
+            cacheKey = fingerprinter.fingerprint(f);
+        } catch (IOException e) {
             e.printStackTrace();
+            cacheKey = PATH_KEY_PREFIX + f.getAbsolutePath();
         }
-        return null;
+        // An entry still stored under the file's name moves over once, without a new lookup, but only when no other
+        // movie file shares that name; otherwise there is no telling whose entry it is
+        if (!metadataStore.contains(cacheKey) && movieNameCounts.getOrDefault(f.getName(), 0) == 1) {
+            metadataStore.copy(f.getName(), cacheKey);
+        }
+        cacheKeys.put(f.getAbsolutePath(), cacheKey);
+        return cacheKey;
     }
 
+    // Stale entries are still served; they are only marked for refreshMovieFileInfo
     MovieInfo getMovieFileInfo(File f, String subtitleAbsolutePath, String year, String title,
                                     String originalTitle) throws Exception {
-        File cacheFile = new File(DATA_CACHE_DIR + "/." + f.getName() + ".json");
-        MovieInfo movieInfo = null;
-        if(cacheFile.exists() && !cacheFile.isDirectory()) {
-            movieInfo = readCacheFile(cacheFile, f.getAbsolutePath(), subtitleAbsolutePath);
+        String cacheKey = cacheKey(f);
+        PerfEvents.MetadataLookup event = new PerfEvents.MetadataLookup();
+        event.begin();
+        event.cacheKey = cacheKey;
+        long start = System.nanoTime();
+        InputStream cached = metadataStore.getStream(cacheKey);
+        if(cached != null) {
+            try {
+                OmdbResponse omdbResponse = OmdbResponse.parse(cached);
+                markIfStale(cacheKey, omdbResponse.isError(), metadataStore.fetchedAt(cacheKey));
+                MovieInfo movieInfo = withMedia(cachedMovieInfo(omdbResponse, year, originalTitle,
+                        f.getAbsolutePath(), subtitleAbsolutePath), f, cacheKey);
+                Metrics.INSTANCE.cacheHits.increment();
+                Metrics.INSTANCE.cacheReadTime.recordSince(start);
+                event.source = "cache";
+                event.commit();
+                return movieInfo;
+            } catch (IOException e) { // Unreadable entry, fetch it again
+                e.printStackTrace();
+            }
         }
-        else {
-            movieInfo = sendAPIRequest(year, title, originalTitle, f.getAbsolutePath(), cacheFile,
-                    subtitleAbsolutePath);
+        Metrics.INSTANCE.cacheMisses.increment();
+        try {
+            MovieInfo movieInfo = withMedia(sendAPIRequest(year, title, originalTitle, f.getAbsolutePath(), cacheKey,
+                    subtitleAbsolutePath), f, cacheKey);
+            event.source = "omdb";
+            event.commit();
+            return movieInfo;
+        } catch (IOException e) {
+            event.source = "failed";
+            event.commit();
+            // Shown as not found for now, but not cached, so the next start looks it up again
+            System.out.println(e.getMessage());
+            return withMedia(new MovieInfo(originalTitle, year, "", "", PosterLoader.NOT_FOUND_URL,
+                    f.getAbsolutePath(), subtitleAbsolutePath, "", "", 0), f, cacheKey);
+        }
+    }
+
+    private void markIfStale(String cacheKey, boolean notFound, long fetchedAt) {
+        long ttl = notFound ? NEGATIVE_TTL_MILLIS : POSITIVE_TTL_MILLIS;
+        if (System.currentTimeMillis() - fetchedAt > ttl) {
+            staleKeys.add(cacheKey);
+        }
+    }
+
+    boolean isMetadataStale(File f) {
+        String cacheKey = cacheKeys.get(f.getAbsolutePath());
+        return cacheKey != null && staleKeys.contains(cacheKey);
+    }
+
+    // Looks a stale entry up again; returns null if that failed, in which case the cached answer stays
+    MovieInfo refreshMovieFileInfo(File f, String subtitleAbsolutePath, String year, String title,
+                                   String originalTitle) {
+        String cacheKey = cacheKeys.get(f.getAbsolutePath());
+        if (cacheKey == null) {
+            cacheKey = cacheKey(f);
+        }
+        try {
+            return withMedia(sendAPIRequest(year, title, originalTitle, f.getAbsolutePath(), cacheKey,
+                    subtitleAbsolutePath), f, cacheKey);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    // Adds what the file's own headers say. Each file content is probed once; the result is kept in the metadata
+    // store next to the OMDb answers, under the same fingerprint.
+    private MovieInfo withMedia(MovieInfo movieInfo, File f, String cacheKey) {
+        String key = MEDIA_KEY_PREFIX + cacheKey;
+        InputStream stored = metadataStore.getStream(key);
+        MediaProbe.Result media = stored == null ? null : MediaProbe.Result.decode(stored);
+        if (media == null) {
+            long start = System.nanoTime();
+            try {
+                media = MediaProbe.probe(f);
+            } catch (IOException e) { // Unreadable right now, try again next time
+                e.printStackTrace();
+                return movieInfo;
+            }
+            Metrics.INSTANCE.mediaProbeTime.recordSince(start);
+            metadataStore.put(key, media.encode());
         }
+        movieInfo.setMedia(media);
         return movieInfo;
     }
-}
\ No newline at end of file
+}
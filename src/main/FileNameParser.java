@@ -0,0 +1,193 @@
+package main;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Turns scanned movie files into lookup requests. Each naming convention is a precompiled matcher tried in order, the
+// first that understands a name wins; files none of them understand are collected in a Report instead of printed.
+class FileNameParser {
+    // The year and title to look up for one file name
+    static class Match {
+        final String year, title, originalTitle;
+
+        Match(String y, String t, String o) {
+            this.year = y;
+            this.title = t;
+            this.originalTitle = o;
+        }
+    }
+
+    interface Convention {
+        String name();
+
+        // Returns null if the file is not named this way; baseName is the name without its extension
+        Match match(File file, String baseName);
+    }
+
+    // Which convention each file was matched by, and which files were not matched at all
+    static class Report {
+        final Map<String, Integer> matchedBy = new TreeMap<>();
+        final List<File> unmatched = new ArrayList<>();
+
+        synchronized void matched(Convention convention) {
+            matchedBy.merge(convention.name(), 1, Integer::sum);
+        }
+
+        synchronized void unmatched(File file) {
+            unmatched.add(file);
+        }
+
+        int matchedCount() {
+            int count = 0;
+            for (int n : matchedBy.values()) {
+                count += n;
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "Matched " + matchedCount() + " files " + matchedBy + ", " + unmatched.size() + " unmatched";
+        }
+    }
+
+    private static final String YEAR = "((?:19|20)[0-9]{2})";
+    private static final Pattern SEPARATORS = Pattern.compile("[._]+");
+    private static final Pattern FOLDER_YEAR = Pattern.compile("^(.+?)\\s*\\(" + YEAR + "\\)$");
+    private static final Pattern SEASON_FOLDER = Pattern.compile("^(?i:season|series|s)[ ._-]*[0-9]{1,2}$");
+
+    // "1999 - The Matrix.mkv", the library's original convention
+    static final Convention YEAR_PREFIX = pattern("year-prefix", "^([0-9]{4}) - (.+)$", m ->
+            new Match(m.group(1), m.group(2), m.group(2)));
+
+    // "The Matrix (1999).mkv", optionally followed by tags such as "[1080p]"
+    static final Convention TITLE_YEAR = pattern("title-year", "^(.+?)\\s*\\(" + YEAR + "\\)(?:\\s.*)?$", m ->
+            new Match(m.group(2), m.group(1), m.group(1)));
+
+    // "The.Matrix.1999.1080p.BluRay.x264-GROUP.mkv"; the title is everything before the first year-like token
+    static final Convention SCENE = pattern("scene", "^(.+?)[._ ]" + YEAR + "(?:[._ ].*)?$", m -> {
+        String title = words(m.group(1));
+        return new Match(m.group(2), title, title);
+    });
+
+    // "Show/Season 1/Show.S01E02.Title.mkv" or "Show (2005)/Season 01/Episode 2.mkv": looked up as the show, with the
+    // year taken from the show folder when it has one
+    static final Convention SEASON = new Convention() {
+        private final Pattern episode = Pattern.compile(
+                "^(.*?)(?:^|[._ -]+)[Ss]([0-9]{1,2})[Ee]([0-9]{1,3})(?![0-9]).*$");
+
+        @Override
+        public String name() {
+            return "season";
+        }
+
+        @Override
+        public Match match(File file, String baseName) {
+            File seasonDir = file.getParentFile();
+            File showDir = seasonDir == null ? null : seasonDir.getParentFile();
+            boolean inSeasonFolder = showDir != null && SEASON_FOLDER.matcher(seasonDir.getName()).matches();
+            Matcher e = episode.matcher(baseName);
+            boolean isEpisode = e.matches();
+            if (!inSeasonFolder && !(isEpisode && !e.group(1).isEmpty())) {
+                return null;
+            }
+
+            String show = inSeasonFolder ? showDir.getName() : words(e.group(1));
+            String year = "";
+            Matcher y = FOLDER_YEAR.matcher(show);
+            if (y.matches()) {
+                show = y.group(1);
+                year = y.group(2);
+            }
+            String episodeName = isEpisode
+                    ? String.format("%s S%02dE%02d", show, Integer.parseInt(e.group(2)), Integer.parseInt(e.group(3)))
+                    : show + " - " + baseName;
+            return new Match(year, show, episodeName);
+        }
+    };
+
+    static final FileNameParser DEFAULT = new FileNameParser(Arrays.asList(YEAR_PREFIX, SEASON, TITLE_YEAR, SCENE));
+
+    private final List<Convention> conventions;
+
+    FileNameParser(List<Convention> conventions) {
+        this.conventions = new ArrayList<>(conventions);
+    }
+
+    // Null if no convention matches
+    MetadataResolver.Request parse(File f, Map<String, String> subtitleFilePaths) {
+        return parse(f, subtitleFilePaths, null);
+    }
+
+    // Files are parsed in parallel; the requests keep the order of movieFiles
+    List<MetadataResolver.Request> parseAll(Collection<File> movieFiles, Map<String, String> subtitleFilePaths,
+                                            Report report) {
+        List<MetadataResolver.Request> requests = movieFiles.parallelStream()
+                .map(f -> parse(f, subtitleFilePaths, report))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (report != null) {
+            report.unmatched.sort(Comparator.naturalOrder());
+        }
+        return requests;
+    }
+
+    private MetadataResolver.Request parse(File f, Map<String, String> subtitleFilePaths, Report report) {
+        String baseName = baseName(f.getName());
+        for (Convention convention : conventions) {
+            Match match = convention.match(f, baseName);
+            if (match != null) {
+                if (report != null) {
+                    report.matched(convention);
+                }
+                return new MetadataResolver.Request(f, subtitleFilePaths.get(normalize(baseName)), match.year,
+                        match.title, match.originalTitle);
+            }
+        }
+        if (report != null) {
+            report.unmatched(f);
+        }
+        return null;
+    }
+
+    // The key movies and subtitles are paired on: the name without its extension, trimmed and lower-cased
+    static String subtitleKey(String fileName) {
+        return normalize(baseName(fileName));
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+
+    private static String normalize(String baseName) {
+        return baseName.trim().toLowerCase();
+    }
+
+    private static String words(String dotted) {
+        return SEPARATORS.matcher(dotted).replaceAll(" ").trim();
+    }
+
+    private interface MatchBuilder {
+        Match build(Matcher m);
+    }
+
+    private static Convention pattern(String name, String regex, MatchBuilder builder) {
+        Pattern compiled = Pattern.compile(regex);
+        return new Convention() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Match match(File file, String baseName) {
+                Matcher m = compiled.matcher(baseName);
+                return m.matches() ? builder.build(m) : null;
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package main;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Identifies a movie file by its content instead of its name, so a renamed or moved file keeps its metadata and two
+// files that only share a name do not share it. The fingerprint hashes the size with the first and last SAMPLE_SIZE
+// bytes, so it costs at most two positional reads whatever the file's size. It is memoized by path, size and mtime,
+// in memory and in the metadata store, so an unchanged file is read once, ever.
+class Fingerprinter {
+    static final int SAMPLE_SIZE = 64 * 1024;
+    // Metadata store keys of memoized fingerprints
+    private static final String MEMO_KEY_PREFIX = "fingerprint:";
+
+    private static class Memo {
+        final long size, lastModified;
+        final String fingerprint;
+
+        Memo(long s, long l, String f) {
+            this.size = s;
+            this.lastModified = l;
+            this.fingerprint = f;
+        }
+    }
+
+    private final MetadataStore store;
+    private final ConcurrentHashMap<String, Memo> memos = new ConcurrentHashMap<>();
+
+    Fingerprinter(MetadataStore store) {
+        this.store = store;
+    }
+
+    // Safe to call from several threads at once
+    String fingerprint(File f) throws IOException {
+        String path = f.getAbsolutePath();
+        long size = f.length();
+        long lastModified = f.lastModified();
+        Memo memo = memos.get(path);
+        if (memo == null) {
+            memo = readMemo(path);
+        }
+        if (memo == null || memo.size != size || memo.lastModified != lastModified) {
+            memo = new Memo(size, lastModified, compute(f));
+            writeMemo(path, memo);
+        }
+        memos.put(path, memo);
+        return memo.fingerprint;
+    }
+
+    // 128 bits of SHA-256 as 32 hex digits
+    static String compute(File f) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            Hasher hasher = Hashing.sha256().newHasher().putLong(size);
+            ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, SAMPLE_SIZE));
+            read(channel, sample, 0);
+            hasher.putBytes(sample);
+            if (size > SAMPLE_SIZE) { // The tail, without going back over the head of a small file
+                long tailStart = Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE);
+                sample.clear();
+                sample.limit((int) (size - tailStart));
+                read(channel, sample, tailStart);
+                hasher.putBytes(sample);
+            }
+            return hasher.hash().toString().substring(0, 32);
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File shrank while being fingerprinted");
+            }
+        }
+        buffer.flip();
+    }
+
+    private Memo readMemo(String path) {
+        InputStream stored = store.getStream(MEMO_KEY_PREFIX + path);
+        if (stored == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(stored)) {
+            return new Memo(in.readLong(), in.readLong(), in.readUTF());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeMemo(String path, Memo memo) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(memo.size);
+            out.writeLong(memo.lastModified);
+            out.writeUTF(memo.fingerprint);
+        } catch (IOException e) { // Not thrown by a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        store.put(MEMO_KEY_PREFIX + path, bytes.toByteArray());
+    }
+}
@@ -0,0 +1,62 @@
+package main;
+
+import java.util.ArrayList;
+
+class Library {
+    final ArrayList<MovieInfo> movieInfos;
+    final ArrayList<MovieInfo> byId;
+    final FacetIndex facetIndex;
+    final SearchIndex searchIndex;
+    final SortIndex sortIndex;
+    // Built in the background once the library has loaded, see setSimilarityIndex; null until then
+    SimilarityIndex similarityIndex;
+    private int nextId;
+
+    Library(int expectedSize) {
+        movieInfos = new ArrayList<>(expectedSize);
+        byId = new ArrayList<>(expectedSize);
+        facetIndex = new FacetIndex();
+        searchIndex = new SearchIndex();
+        sortIndex = new SortIndex(byId);
+    }
+
+    // Ids are dense and never reused, so they stay valid as keys into the indexes after live removals.
+    // Returns true if the movie brought a new folder or genre with it.
+    boolean add(MovieInfo movieInfo, String folder) {
+        movieInfo.id = nextId++;
+        movieInfo.setFolder(folder);
+        byId.add(movieInfo);
+        movieInfos.add(movieInfo);
+        searchIndex.add(movieInfo);
+        sortIndex.invalidate();
+        if (similarityIndex != null) {
+            similarityIndex.add(movieInfo);
+        }
+        return facetIndex.add(movieInfo);
+    }
+
+    void remove(MovieInfo movieInfo) {
+        movieInfos.remove(movieInfo);
+        byId.set(movieInfo.id, null);
+        facetIndex.remove(movieInfo);
+        searchIndex.remove(movieInfo);
+        sortIndex.invalidate();
+        if (similarityIndex != null) {
+            similarityIndex.remove(movieInfo.id);
+        }
+    }
+
+    // Takes over an index built from an earlier copy of the library, catching it up with movies added or removed
+    // since that copy was taken
+    void setSimilarityIndex(SimilarityIndex index) {
+        for (int id = 0; id < byId.size(); id++) {
+            MovieInfo movieInfo = byId.get(id);
+            if (movieInfo == null) {
+                index.remove(id);
+            } else if (!index.contains(id)) {
+                index.add(movieInfo);
+            }
+        }
+        similarityIndex = index;
+    }
+}
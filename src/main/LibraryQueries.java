@@ -0,0 +1,157 @@
+package main;
+
+import javafx.application.Platform;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Owns the library once the window is up. Changes to it and queries against it run in order on one background thread,
+// so filtering and sorting never hold up the FX thread and the indexes need no locks; each query sees the library as
+// it was after the changes queued before it. Only the newest query counts: an older one still waiting is skipped and
+// one already running gives up between steps. A finished query's movies and facet counts reach the FX thread together
+// in one Platform.runLater, and only if no newer query was started meanwhile.
+class LibraryQueries {
+    static class Query {
+        final String folder, genre, search;
+        final SortOrder sortOrder;
+        // "More like this" movie, shown with its neighbours instead of the filtered library; null if none
+        final MovieInfo similarTo;
+
+        Query(String f, String g, String s, SortOrder o, MovieInfo m) {
+            this.folder = f;
+            this.genre = g;
+            this.search = s;
+            this.sortOrder = o;
+            this.similarTo = m;
+        }
+    }
+
+    static class Result {
+        final List<MovieInfo> movies;
+        // Null when the query did not count facets, e.g. for "more like this"
+        final Map<String, Integer> folderCounts, genreCounts;
+
+        Result(List<MovieInfo> m, Map<String, Integer> f, Map<String, Integer> g) {
+            this.movies = m;
+            this.folderCounts = f;
+            this.genreCounts = g;
+        }
+    }
+
+    private final Library library;
+    private final ExecutorService executor;
+    private final AtomicLong latestQuery = new AtomicLong();
+    // Reused by every query, on the query thread only
+    private final BitSet searchMatches = new BitSet();
+    private final BitSet visibleIds = new BitSet();
+
+    LibraryQueries(Library library) {
+        this.library = library;
+        executor = Executors.newSingleThreadExecutor(MetadataResolver.daemonThreadFactory("library-query"));
+    }
+
+    void add(MovieInfo movieInfo, String folder) {
+        executor.execute(() -> library.add(movieInfo, folder));
+    }
+
+    void remove(MovieInfo movieInfo) {
+        executor.execute(() -> library.remove(movieInfo));
+    }
+
+    // Ranks the library as it is now on a thread of its own, so queries keep running meanwhile. onReady runs on the
+    // FX thread once "more like this" can be asked.
+    void precomputeSimilarities(Runnable onReady) {
+        executor.execute(() -> {
+            List<MovieInfo> movieInfos = new ArrayList<>(library.movieInfos);
+            MetadataResolver.daemonThreadFactory("similarity-index").newThread(() -> {
+                SimilarityIndex index = SimilarityIndex.build(movieInfos);
+                executor.execute(() -> {
+                    library.setSimilarityIndex(index);
+                    Platform.runLater(onReady);
+                });
+            }).start();
+        });
+    }
+
+    // Supersedes every query run before; onResult runs on the FX thread
+    void run(Query query, Consumer<Result> onResult) {
+        long generation = latestQuery.incrementAndGet();
+        executor.execute(() -> {
+            if (isSuperseded(generation)) {
+                return;
+            }
+            Result result = query.similarTo != null ? similar(query.similarTo) : filter(query, generation);
+            if (result == null) {
+                return;
+            }
+            Platform.runLater(() -> {
+                if (!isSuperseded(generation)) {
+                    onResult.accept(result);
+                }
+            });
+        });
+    }
+
+    private boolean isSuperseded(long generation) {
+        return latestQuery.get() != generation;
+    }
+
+    // Null if superseded before it finished
+    private Result filter(Query query, long generation) {
+        PerfEvents.GridQuery event = new PerfEvents.GridQuery();
+        event.begin();
+        event.query = query.search;
+        event.folder = query.folder;
+        event.genre = query.genre;
+        event.sortOrder = query.sortOrder.name();
+        long start = System.nanoTime();
+        BitSet matches = null;
+        if (!query.search.isEmpty()) {
+            library.searchIndex.search(query.search, searchMatches);
+            matches = searchMatches;
+        }
+        library.facetIndex.select(query.folder, query.genre, matches, visibleIds);
+        if (isSuperseded(generation)) {
+            return cancelled(event);
+        }
+
+        long sortStart = System.nanoTime();
+        List<MovieInfo> movies = library.sortIndex.order(query.sortOrder, visibleIds);
+        long sortNanos = System.nanoTime() - sortStart;
+        Metrics.INSTANCE.sortTime.record(sortNanos);
+        if (isSuperseded(generation)) {
+            return cancelled(event);
+        }
+
+        Map<String, Integer> folderCounts = new HashMap<>();
+        Map<String, Integer> genreCounts = new HashMap<>();
+        library.facetIndex.countFolders(query.genre, matches, folderCounts);
+        library.facetIndex.countGenres(query.folder, matches, genreCounts);
+        Metrics.INSTANCE.filterTime.record(System.nanoTime() - start - sortNanos);
+
+        event.results = movies.size();
+        event.sortNanos = sortNanos;
+        event.commit();
+        return new Result(movies, folderCounts, genreCounts);
+    }
+
+    private static Result cancelled(PerfEvents.GridQuery event) {
+        event.cancelled = true;
+        event.commit();
+        return null;
+    }
+
+    // The movie itself, then the movies most like it
+    private Result similar(MovieInfo similarTo) {
+        int[] ids = library.similarityIndex == null ? new int[0] : library.similarityIndex.neighbours(similarTo.id);
+        List<MovieInfo> movies = new ArrayList<>(ids.length + 1);
+        movies.add(similarTo);
+        for (int id : ids) {
+            movies.add(library.byId.get(id));
+        }
+        return new Result(movies, null, null);
+    }
+}
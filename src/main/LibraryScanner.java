@@ -0,0 +1,345 @@
+package main;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Walks the library once, classifying movie and subtitle files together. A manifest of every directory's mtime and
+// relevant entries is persisted so that on the next launch only directories whose mtime changed are listed again.
+// The library may span several roots, e.g. different disks or network mounts. Each root is walked on its own thread,
+// and a root that has not finished within the timeout is left out of this scan rather than holding up the rest. Its
+// walk carries on in the background, and the root joins the library late through awaitLateRoots.
+class LibraryScanner {
+    static final String MANIFEST_FILE = "library.manifest";
+    static final long DEFAULT_ROOT_TIMEOUT_SECONDS = 10;
+    private static final int MANIFEST_VERSION = 1;
+    static final Set<String> MOVIE_EXTENSIONS = new HashSet<>(Arrays.asList("mkv", "mp4", "avi", "VOB", "mpg"));
+    static final Set<String> SUBTITLE_EXTENSIONS = new HashSet<>(Arrays.asList("srt", "sub"));
+
+    static class FileEntry {
+        final String name;
+        final long size, lastModified;
+
+        FileEntry(String n, long s, long l) {
+            this.name = n;
+            this.size = s;
+            this.lastModified = l;
+        }
+    }
+
+    static class DirectoryEntry {
+        final long lastModified;
+        final List<String> subdirectories;
+        final List<FileEntry> files;
+
+        DirectoryEntry(long l, List<String> d, List<FileEntry> f) {
+            this.lastModified = l;
+            this.subdirectories = d;
+            this.files = f;
+        }
+    }
+
+    static class ScanResult {
+        final List<File> movieFiles = new ArrayList<>();
+        final List<File> subtitleFiles = new ArrayList<>();
+        final List<File> directories = new ArrayList<>();
+        final Set<String> changedDirectories = new HashSet<>();
+        // Roots that could not be walked in time or at all
+        final List<File> unavailableRoots = new ArrayList<>();
+
+        private void addAll(ScanResult other) {
+            movieFiles.addAll(other.movieFiles);
+            subtitleFiles.addAll(other.subtitleFiles);
+            directories.addAll(other.directories);
+            changedDirectories.addAll(other.changedDirectories);
+        }
+    }
+
+    // What one root's walker found, merged into the scan once it finishes
+    private static class Walk {
+        final ScanResult result = new ScanResult();
+        final Map<String, DirectoryEntry> directories = new HashMap<>();
+    }
+
+    private final List<File> roots;
+    private final long rootTimeoutMillis;
+    private final File cacheDir;
+    private final Path cacheDirPath;
+    private final File manifestFile;
+    private volatile Map<String, DirectoryEntry> manifest;
+    // Walks still running after the deadline, by the root they walk
+    private final Map<Future<Walk>, File> lateWalks = new HashMap<>();
+    private CompletionService<Walk> walks;
+
+    LibraryScanner(List<File> roots, File cacheDir) {
+        this(roots, cacheDir, TimeUnit.SECONDS.toMillis(
+                Long.getLong("movieBrowser.rootTimeout", DEFAULT_ROOT_TIMEOUT_SECONDS)));
+    }
+
+    LibraryScanner(List<File> roots, File cacheDir, long rootTimeoutMillis) {
+        this.roots = roots;
+        this.rootTimeoutMillis = rootTimeoutMillis;
+        this.cacheDir = cacheDir;
+        this.cacheDirPath = normalize(cacheDir);
+        this.manifestFile = new File(cacheDir, MANIFEST_FILE);
+    }
+
+    // Results are merged in the order of the roots, whichever finishes first
+    ScanResult scan() {
+        Map<String, DirectoryEntry> previous = readManifest();
+        Map<String, DirectoryEntry> current = new HashMap<>();
+        ScanResult result = new ScanResult();
+
+        // A walker stuck on a hung mount never returns, so each one gets its own daemon thread
+        ExecutorService executor = Executors.newCachedThreadPool(MetadataResolver.daemonThreadFactory("library-scan"));
+        walks = new ExecutorCompletionService<>(executor);
+        List<Future<Walk>> started = new ArrayList<>(roots.size());
+        for (File root : roots) {
+            started.add(walks.submit(() -> walk(root, previous)));
+        }
+        executor.shutdown();
+
+        // The roots are walked side by side, so they all share one deadline
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rootTimeoutMillis);
+        for (int i = 0; i < roots.size(); i++) {
+            File root = roots.get(i);
+            Future<Walk> walk = started.get(i);
+            try {
+                Walk finished = walk.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                result.addAll(finished.result);
+                current.putAll(finished.directories);
+                continue;
+            } catch (TimeoutException e) {
+                // Probably a large or slow mount rather than a hung one; let it finish and join late
+                lateWalks.put(walk, root);
+                System.out.println("Library root " + root.getPath() + " took more than " + rootTimeoutMillis
+                        + " ms to scan, adding it once it has been walked");
+            } catch (ExecutionException e) {
+                System.out.println("Library root " + root.getPath() + " can't be read, skipping it: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                walk.cancel(true);
+            }
+            result.unavailableRoots.add(root);
+            // Keep what was known about it, so it is not all rescanned once it is back
+            keepPreviousEntries(root, previous, current);
+        }
+
+        manifest = current;
+        writeManifest(current);
+        return result;
+    }
+
+    // Blocks until every root that missed the scan's deadline has been walked, handing each one's files to onWalked as
+    // its walk finishes and recording its directories in the manifest. Call after scan, off the FX thread.
+    void awaitLateRoots(Consumer<ScanResult> onWalked) {
+        for (int remaining = lateWalks.size(); remaining > 0; ) {
+            Future<Walk> walk;
+            try {
+                walk = walks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            File root = lateWalks.get(walk);
+            if (root == null) { // One of the roots that made the deadline
+                continue;
+            }
+            remaining--;
+            Walk finished;
+            try {
+                finished = walk.get();
+            } catch (ExecutionException e) {
+                System.out.println("Library root " + root.getPath() + " can't be read, skipping it: " + e.getCause());
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Map<String, DirectoryEntry> updated = new HashMap<>(manifest);
+            updated.keySet().removeIf(path -> isUnder(root, path));
+            updated.putAll(finished.directories);
+            manifest = updated;
+            writeManifest(updated);
+            onWalked.accept(finished.result);
+        }
+    }
+
+    // Throws if the root itself can't be read, e.g. an unmounted disk
+    private Walk walk(File root, Map<String, DirectoryEntry> previous) throws IOException {
+        Walk walk = new Walk();
+        ScanResult result = walk.result;
+        Map<String, DirectoryEntry> current = walk.directories;
+        Deque<File> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) { // The scan was interrupted; nobody will look at the rest
+                return walk;
+            }
+            File dir = pending.pop();
+            if (isCacheDir(dir)) {
+                continue;
+            }
+            DirectoryEntry entry;
+            try {
+                long lastModified = Files.getLastModifiedTime(dir.toPath()).toMillis();
+                entry = previous.get(dir.getPath());
+                if (entry == null || entry.lastModified != lastModified) {
+                    entry = listDirectory(dir, lastModified);
+                    result.changedDirectories.add(dir.getPath());
+                }
+            } catch (IOException e) {
+                if (dir == root) {
+                    throw e;
+                }
+                e.printStackTrace();
+                continue;
+            }
+            current.put(dir.getPath(), entry);
+            result.directories.add(dir);
+
+            for (FileEntry file : entry.files) {
+                String extension = extension(file.name);
+                if (MOVIE_EXTENSIONS.contains(extension)) {
+                    result.movieFiles.add(new File(dir, file.name));
+                } else if (SUBTITLE_EXTENSIONS.contains(extension)) {
+                    result.subtitleFiles.add(new File(dir, file.name));
+                }
+            }
+            for (int i = entry.subdirectories.size() - 1; i >= 0; i--) {
+                pending.push(new File(dir, entry.subdirectories.get(i)));
+            }
+        }
+        return walk;
+    }
+
+    private static void keepPreviousEntries(File root, Map<String, DirectoryEntry> previous,
+                                            Map<String, DirectoryEntry> current) {
+        for (Map.Entry<String, DirectoryEntry> entry : previous.entrySet()) {
+            if (isUnder(root, entry.getKey())) {
+                current.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean isUnder(File root, String path) {
+        String rootPath = root.getPath();
+        String prefix = rootPath.endsWith(File.separator) ? rootPath : rootPath + File.separator;
+        return path.equals(rootPath) || path.startsWith(prefix);
+    }
+
+    DirectoryEntry getDirectoryEntry(File dir) {
+        return manifest == null ? null : manifest.get(dir.getPath());
+    }
+
+    static boolean isMovieFile(String name) {
+        return MOVIE_EXTENSIONS.contains(extension(name));
+    }
+
+    static boolean isSubtitleFile(String name) {
+        return SUBTITLE_EXTENSIONS.contains(extension(name));
+    }
+
+    static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1);
+    }
+
+    boolean isCacheDir(File dir) {
+        return dir.getName().equals(cacheDir.getName()) && normalize(dir).equals(cacheDirPath);
+    }
+
+    private static Path normalize(File f) {
+        return f.getAbsoluteFile().toPath().normalize();
+    }
+
+    private DirectoryEntry listDirectory(File dir, long lastModified) throws IOException {
+        List<String> subdirectories = new ArrayList<>();
+        List<FileEntry> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) { // Broken link or file removed mid-scan
+                    continue;
+                }
+                String name = path.getFileName().toString();
+                if (attributes.isDirectory()) {
+                    subdirectories.add(name);
+                } else if (isMovieFile(name) || isSubtitleFile(name)) {
+                    files.add(new FileEntry(name, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+        Collections.sort(subdirectories);
+        files.sort(Comparator.comparing(f -> f.name));
+        return new DirectoryEntry(lastModified, subdirectories, files);
+    }
+
+    private Map<String, DirectoryEntry> readManifest() {
+        Map<String, DirectoryEntry> entries = new HashMap<>();
+        if (!manifestFile.exists()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)))) {
+            if (in.readInt() != MANIFEST_VERSION) {
+                return entries;
+            }
+            int directoryCount = in.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                int subdirectoryCount = in.readInt();
+                List<String> subdirectories = new ArrayList<>(subdirectoryCount);
+                for (int j = 0; j < subdirectoryCount; j++) {
+                    subdirectories.add(in.readUTF());
+                }
+                int fileCount = in.readInt();
+                List<FileEntry> files = new ArrayList<>(fileCount);
+                for (int j = 0; j < fileCount; j++) {
+                    files.add(new FileEntry(in.readUTF(), in.readLong(), in.readLong()));
+                }
+                entries.put(path, new DirectoryEntry(lastModified, subdirectories, files));
+            }
+        } catch (IOException e) { // A damaged manifest only costs a full rescan
+            e.printStackTrace();
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private void writeManifest(Map<String, DirectoryEntry> entries) {
+        File tmp = new File(manifestFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MANIFEST_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, DirectoryEntry> entry : entries.entrySet()) {
+                DirectoryEntry directory = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(directory.lastModified);
+                out.writeInt(directory.subdirectories.size());
+                for (String subdirectory : directory.subdirectories) {
+                    out.writeUTF(subdirectory);
+                }
+                out.writeInt(directory.files.size());
+                for (FileEntry file : directory.files) {
+                    out.writeUTF(file.name);
+                    out.writeLong(file.size);
+                    out.writeLong(file.lastModified);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package main;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+// The built library as of the last run, so an unchanged library starts without parsing a single filename or
+// metadata entry. Movies are stored with their dictionary codes and sort keys, grouped by directory along with that
+// directory's mtime; a directory whose mtime no longer matches is left for a full rebuild.
+class LibrarySnapshot {
+    static final String SNAPSHOT_FILE = "library.snapshot";
+    private static final int MAGIC = 0x4D424C53; // "MBLS"
+    private static final int VERSION = 3;
+
+    static class Entry {
+        final MovieInfo movieInfo;
+        // Its metadata store key, and when that entry was fetched, to notice refreshes made after the snapshot; -1 if
+        // never cached
+        final String cacheKey;
+        final long fetchedAt;
+
+        Entry(MovieInfo m, String c, long f) {
+            this.movieInfo = m;
+            this.cacheKey = c;
+            this.fetchedAt = f;
+        }
+    }
+
+    private static class Directory {
+        final long lastModified;
+        final List<Entry> entries;
+
+        Directory(long l, List<Entry> e) {
+            this.lastModified = l;
+            this.entries = e;
+        }
+    }
+
+    private final Map<String, Directory> directories;
+
+    private LibrarySnapshot(Map<String, Directory> directories) {
+        this.directories = directories;
+    }
+
+    // Returns the snapshot's movies for dir if it has not changed since, otherwise null
+    List<Entry> get(File dir, long lastModified) {
+        Directory directory = directories.get(dir.getAbsolutePath());
+        return directory == null || directory.lastModified != lastModified ? null : directory.entries;
+    }
+
+    int directoryCount() {
+        return directories.size();
+    }
+
+    // An unreadable or outdated snapshot reads as empty
+    static LibrarySnapshot read(File cacheDir) {
+        Map<String, Directory> directories = new HashMap<>();
+        File file = new File(cacheDir, SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return new LibrarySnapshot(directories);
+        }
+        try {
+            // Decoded from one buffer; a stream costs a synchronized call per int read here
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return new LibrarySnapshot(directories);
+            }
+            // Codes are only meaningful within one run, so each saved dictionary is mapped onto the live one
+            int[] values = readDictionary(in, Dictionary.VALUES);
+            int[] directors = readDictionary(in, Dictionary.DIRECTORS);
+            int[] genres = readDictionary(in, Dictionary.GENRES);
+            int[] tokens = readDictionary(in, Dictionary.TOKENS);
+
+            int directoryCount = in.getInt();
+            for (int i = 0; i < directoryCount; i++) {
+                String path = readString(in);
+                long lastModified = in.getLong();
+                int movieCount = in.getInt();
+                List<Entry> entries = new ArrayList<>(movieCount);
+                for (int j = 0; j < movieCount; j++) {
+                    String absolutePath = path + File.separator + readString(in);
+                    String title = readString(in);
+                    String plot = readString(in);
+                    String posterURL = readString(in);
+                    String subtitle = readString(in);
+                    int runtime = in.getInt();
+                    int yearKey = in.getInt();
+                    float ratingKey = in.getFloat();
+                    int yearCode = values[in.getInt()];
+                    int ratingCode = values[in.getInt()];
+                    int directorCode = directors[in.getInt()];
+                    int width = in.getInt();
+                    int height = in.getInt();
+                    int codecCode = in.getInt();
+                    if (codecCode != Dictionary.FULL) {
+                        codecCode = values[codecCode];
+                    }
+                    long genreMask = 0;
+                    for (long mask = in.getLong(); mask != 0; mask &= mask - 1) {
+                        int genre = genres[Long.numberOfTrailingZeros(mask)];
+                        if (genre != Dictionary.FULL) {
+                            genreMask |= 1L << genre;
+                        }
+                    }
+                    int[] tagIds = new int[in.getInt()];
+                    for (int k = 0; k < tagIds.length; k++) {
+                        tagIds[k] = tokens[in.getInt()];
+                    }
+                    Arrays.sort(tagIds);
+                    String cacheKey = readString(in);
+                    long fetchedAt = in.getLong();
+                    entries.add(new Entry(new MovieInfo(title, plot, posterURL, absolutePath,
+                            subtitle.isEmpty() ? null : subtitle, runtime, yearKey, ratingKey, genreMask, tagIds,
+                            yearCode, ratingCode, directorCode, width, height, codecCode), cacheKey, fetchedAt));
+                }
+                directories.put(path, new Directory(lastModified, entries));
+            }
+        } catch (IOException | RuntimeException e) { // A damaged snapshot only costs a full rebuild
+            e.printStackTrace();
+            directories.clear();
+        }
+        return new LibrarySnapshot(directories);
+    }
+
+    // movieDirectories maps each directory's absolute path to its mtime at scan time
+    static void write(File cacheDir, Map<String, Long> movieDirectories, Collection<Entry> entries) {
+        Map<String, List<Entry>> byDirectory = new HashMap<>();
+        for (Entry entry : entries) {
+            String directory = new File(entry.movieInfo.absolutePath).getParent();
+            if (movieDirectories.containsKey(directory)) {
+                byDirectory.computeIfAbsent(directory, d -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        File file = new File(cacheDir, SNAPSHOT_FILE);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeDictionary(out, Dictionary.VALUES);
+            writeDictionary(out, Dictionary.DIRECTORS);
+            writeDictionary(out, Dictionary.GENRES);
+            writeDictionary(out, Dictionary.TOKENS);
+
+            out.writeInt(byDirectory.size());
+            for (Map.Entry<String, List<Entry>> directory : byDirectory.entrySet()) {
+                writeString(out, directory.getKey());
+                out.writeLong(movieDirectories.get(directory.getKey()));
+                out.writeInt(directory.getValue().size());
+                for (Entry entry : directory.getValue()) {
+                    MovieInfo m = entry.movieInfo;
+                    writeString(out, new File(m.absolutePath).getName());
+                    writeString(out, m.title);
+                    writeString(out, m.plot);
+                    writeString(out, m.posterURL);
+                    writeString(out, m.subtitleAbsolutePath == null ? "" : m.subtitleAbsolutePath);
+                    out.writeInt(m.runtime);
+                    out.writeInt(m.yearKey);
+                    out.writeFloat(m.ratingKey);
+                    out.writeInt(m.yearCode);
+                    out.writeInt(m.ratingCode);
+                    out.writeInt(m.directorCode);
+                    out.writeInt(m.width);
+                    out.writeInt(m.height);
+                    out.writeInt(m.codecCode);
+                    out.writeLong(m.genreMask);
+                    out.writeInt(m.tagIds.length);
+                    for (int tagId : m.tagIds) {
+                        out.writeInt(tagId);
+                    }
+                    writeString(out, entry.cacheKey);
+                    out.writeLong(entry.fetchedAt);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Values are written after every movie was built, so each code a movie holds is covered
+    private static void writeDictionary(DataOutputStream out, Dictionary dictionary) throws IOException {
+        String[] values = dictionary.values();
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static int[] readDictionary(ByteBuffer in, Dictionary dictionary) {
+        int[] codes = new int[in.getInt()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = dictionary.intern(readString(in));
+        }
+        return codes;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,181 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Live mode: watches every library directory and reports movie files appearing or disappearing, so the grid can be
+// updated without a rescan. Callbacks run on the watcher thread, or on the thread adding a late root.
+// A new file is reported once its size and mtime have stopped changing, not when its copy or download begins, so it is
+// never fingerprinted or probed half-written.
+class LibraryWatcher implements Runnable {
+    private static final long SETTLE_MILLIS = 3000;
+    private static final long SETTLE_CHECK_MILLIS = 500;
+
+    interface Listener {
+        void movieAdded(File movieFile);
+
+        void movieRemoved(File movieFile);
+    }
+
+    private final WatchService watchService;
+    private final Map<WatchKey, File> watchedDirectories;
+    private final Set<File> knownMovies;
+    private final LibraryScanner scanner;
+    private final Listener listener;
+    // New movie files still being written, checked until they settle; only touched on the watcher thread
+    private final Map<File, Growth> growing = new HashMap<>();
+
+    private static class Growth {
+        long size, lastModified, stableSince;
+
+        Growth(long s, long l, long t) {
+            this.size = s;
+            this.lastModified = l;
+            this.stableSince = t;
+        }
+    }
+
+    LibraryWatcher(LibraryScanner s, LibraryScanner.ScanResult scanResult, Listener l) throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        watchedDirectories = new ConcurrentHashMap<>();
+        knownMovies = ConcurrentHashMap.newKeySet();
+        knownMovies.addAll(scanResult.movieFiles);
+        scanner = s;
+        listener = l;
+        for (File dir : scanResult.directories) {
+            register(dir);
+        }
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "library-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = growing.isEmpty() ? watchService.take()
+                        : watchService.poll(SETTLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            if (key != null) {
+                handle(key);
+            }
+            settle();
+        }
+    }
+
+    private void handle(WatchKey key) {
+        File dir = watchedDirectories.get(key);
+        if (dir != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    continue;
+                }
+                File changed = new File(dir, event.context().toString());
+                if (event.kind() == ENTRY_CREATE) {
+                    created(changed);
+                } else if (event.kind() == ENTRY_DELETE) {
+                    deleted(changed);
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    // Reports the growing files whose size and mtime have not changed for SETTLE_MILLIS
+    private void settle() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<File, Growth>> iterator = growing.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<File, Growth> entry = iterator.next();
+            File movieFile = entry.getKey();
+            Growth growth = entry.getValue();
+            long size = movieFile.length(), lastModified = movieFile.lastModified();
+            if (lastModified == 0) { // Gone before it was finished
+                iterator.remove();
+            } else if (size != growth.size || lastModified != growth.lastModified) {
+                growth.size = size;
+                growth.lastModified = lastModified;
+                growth.stableSince = now;
+            } else if (now - growth.stableSince >= SETTLE_MILLIS) {
+                iterator.remove();
+                if (knownMovies.add(movieFile)) {
+                    listener.movieAdded(movieFile);
+                }
+            }
+        }
+    }
+
+    // A root the scan gave up waiting for has now been walked: watch it and report its movies as added
+    void addWalked(LibraryScanner.ScanResult walked) {
+        for (File dir : walked.directories) {
+            register(dir);
+        }
+        for (File movieFile : walked.movieFiles) {
+            if (knownMovies.add(movieFile)) {
+                listener.movieAdded(movieFile);
+            }
+        }
+    }
+
+    private void created(File changed) {
+        if (changed.isDirectory()) {
+            if (scanner.isCacheDir(changed)) {
+                return;
+            }
+            register(changed);
+            File[] children = changed.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    created(child);
+                }
+            }
+        } else if (LibraryScanner.isMovieFile(changed.getName()) && !knownMovies.contains(changed)) {
+            growing.putIfAbsent(changed, new Growth(changed.length(), changed.lastModified(),
+                    System.currentTimeMillis()));
+        }
+    }
+
+    private void deleted(File changed) {
+        if (growing.remove(changed) != null) {
+            return;
+        }
+        if (knownMovies.remove(changed)) {
+            listener.movieRemoved(changed);
+            return;
+        }
+        // A removed directory only reports itself, so drop everything known underneath it
+        String prefix = changed.getPath() + File.separator;
+        growing.keySet().removeIf(movie -> movie.getPath().startsWith(prefix));
+        Iterator<File> iterator = knownMovies.iterator();
+        while (iterator.hasNext()) {
+            File movie = iterator.next();
+            if (movie.getPath().startsWith(prefix)) {
+                iterator.remove();
+                listener.movieRemoved(movie);
+            }
+        }
+    }
+
+    private void register(File dir) {
+        try {
+            watchedDirectories.put(dir.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE), dir);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
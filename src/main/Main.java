@@ -1,142 +1,191 @@
 package main;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
 import javafx.application.Application;
-import javafx.geometry.Insets;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Main extends Application {
-    private static final String fileRegex = "^([0-9]{4}) - (.*)\\..{3}$";
-
-    private HashSet<String> allGenres;
+    private Map<String, String> subtitleFilePaths;
     private FileManager fileManager;
     private NodeManager nodeManager;
+    private StartupMetrics metrics;
+    private PulseBatcher<MovieInfo> arrivals;
+    private final AtomicInteger resolvedCount = new AtomicInteger();
+    private volatile int requestCount = -1;
 
-    private FlowPane initRoot(Stage primaryStage, Multimap<String, MovieInfo> folderMap, ArrayList<MovieInfo> movieInfos) {
+    private void initWindow(Stage primaryStage, Library library) {
         primaryStage.setTitle("Movie Browser");
         primaryStage.getIcons().add(new Image("file:.style/icon.png"));
 
-        FlowPane mainArea = new FlowPane();
-        mainArea.getStyleClass().add("main-area");
-        mainArea.setVgap(10);
-        mainArea.setHgap(10);
-        mainArea.setPadding(new Insets(15, 15, 15, 15));
-        ScrollPane scrollPane = new ScrollPane(mainArea);
-        scrollPane.setFitToHeight(true);
-        scrollPane.setFitToWidth(true);
+        ListView<Integer> posterGrid = nodeManager.generatePosterGrid();
+        posterGrid.getStyleClass().add("main-area");
+        VBox.setVgrow(posterGrid, Priority.ALWAYS);
 
-        nodeManager.setInCurrentFolder(movieInfos);
-        ToolBar toolBar = nodeManager.generateToolBar(folderMap, movieInfos, allGenres);
-        VBox layout = new VBox(toolBar, scrollPane);
+        ToolBar toolBar = nodeManager.generateToolBar(library);
+        VBox layout = new VBox(toolBar, posterGrid);
 
         Scene scene = new Scene(layout, 600, 400);
         scene.getStylesheets().add("file:.style/style.css");
         primaryStage.setScene(scene);
+        primaryStage.show();
 
         // No idea why this has to be done but it works
         primaryStage.setMaximized(false);
         primaryStage.setMaximized(true);
-        return mainArea;
     }
 
-    private void initWindow(Stage primaryStage, ArrayList<MovieInfo> movieInfos, Multimap<String, MovieInfo> folderMap) {
-        FlowPane layout = initRoot(primaryStage, folderMap, movieInfos);
+    // Looks up movies that turn up after the initial load, off the thread that noticed them
+    private MetadataResolver addedMovies;
 
-        for(MovieInfo movieInfo : movieInfos) {
-            VBox imageViewWrapper = new VBox();
-            imageViewWrapper.setPrefWidth(NodeManager.POSTER_WIDTH);
+    private final LibraryWatcher.Listener libraryListener = new LibraryWatcher.Listener() {
+        @Override
+        public void movieAdded(File movieFile) {
+            MetadataResolver.Request request = MetadataResolver.createRequest(movieFile, subtitleFilePaths);
+            if (request == null) {
+                return;
+            }
+            addedMovies.submit(request, (added, movieInfo) -> {
+                if (movieInfo != null) {
+                    movieInfo.setFolder(movieFile.getParentFile().getName());
+                    arrivals.add(movieInfo);
+                }
+            });
+        }
 
-            ImageView poster = nodeManager.generatePoster(movieInfo);
-            Label label = nodeManager.generatePosterLabel(movieInfo.title, movieInfo.year);
+        @Override
+        public void movieRemoved(File movieFile) {
+            String absolutePath = movieFile.getAbsolutePath();
+            Platform.runLater(() -> nodeManager.removeMovie(absolutePath));
+        }
+    };
+
+    // Roots too slow for the scan join as their walks finish, their movies added the way the watcher adds new ones
+    private void addLateRoots(LibraryWatcher watcher) {
+        fileManager.awaitLateRoots(late -> {
+            subtitleFilePaths.putAll(MetadataResolver.subtitleFilePaths(late.subtitleFiles));
+            if (watcher != null) {
+                watcher.addWalked(late);
+                return;
+            }
+            for (File movieFile : late.movieFiles) {
+                libraryListener.movieAdded(movieFile);
+            }
+        });
+    }
 
-            if(movieInfo.plot.length() > 0) { // In case movie info is not found in database
-                Tooltip plotSummary = new Tooltip(movieInfo.plot  + "\nIMDB Rating: " + movieInfo.imdbRating +
-                        "\nDirector: " + movieInfo.director + "\nGenres: " + String.join(", ", movieInfo.genres)
-                + "\nRuntime: " + movieInfo.runtime + " min");
-                plotSummary.setPrefWidth(500);
-                plotSummary.setShowDelay(Duration.millis(50));
-                plotSummary.setShowDuration(Duration.INDEFINITE);
-                Tooltip.install(imageViewWrapper, plotSummary);
+    // Stale cache entries were shown as they are; their fresh answers replace them in the grid as they come in
+    private void refreshStaleMetadata(List<File> movieFiles) {
+        List<MetadataResolver.Request> stale = new ArrayList<>();
+        for (File movieFile : movieFiles) {
+            if (fileManager.isMetadataStale(movieFile)) {
+                MetadataResolver.Request request = MetadataResolver.createRequest(movieFile, subtitleFilePaths);
+                if (request != null) {
+                    stale.add(request);
+                }
             }
-            nodeManager.makeWrapperClickable(imageViewWrapper, movieInfo);
-            imageViewWrapper.getStyleClass().add("wrapper");
-            imageViewWrapper.getChildren().addAll(poster, label);
-            movieInfo.setView(imageViewWrapper);
-            layout.getChildren().add(imageViewWrapper);
         }
-        nodeManager.setInvisible(movieInfos);
+        PulseBatcher<MovieInfo> refreshed = new PulseBatcher<>(nodeManager::replaceMovies);
+        new MetadataResolver(fileManager).refresh(stale, (request, movieInfo) -> {
+            movieInfo.setFolder(request.file.getParentFile().getName());
+            refreshed.add(movieInfo);
+        });
     }
 
-    private void displayLoading(Stage primaryStage) {
-        primaryStage.setTitle("Movie Browser");
-        primaryStage.getIcons().add(new Image("file:.style/icon.png"));
-        ProgressIndicator progressIndicator = new ProgressIndicator();
-        Scene scene = new Scene(progressIndicator, 600, 400);
-        scene.getStylesheets().add("file:.style/style.css");
-        primaryStage.setScene(scene);
-        primaryStage.show();
-        primaryStage.setMaximized(true);
+    // Runs off the FX thread; movies reach the grid through arrivals as soon as each one resolves
+    private void loadLibrary() {
+        try {
+            // Walk the library once for both movies and subtitles
+            LibraryScanner.ScanResult scanResult = fileManager.scanLibrary();
+            // Late roots add their subtitles while the watcher reads them
+            subtitleFilePaths = new ConcurrentHashMap<>(MetadataResolver.subtitleFilePaths(scanResult.subtitleFiles));
+
+            // Unchanged directories come straight from the last snapshot
+            List<File> unresolved = new ArrayList<>();
+            List<MovieInfo> restored = fileManager.restoreLibrary(scanResult, subtitleFilePaths, unresolved);
+            List<MovieInfo> loaded = Collections.synchronizedList(new ArrayList<>(restored));
+            for (MovieInfo movieInfo : restored) {
+                arrivals.add(movieInfo);
+            }
+
+            // Find info for each valid movie file
+            FileNameParser.Report report = new FileNameParser.Report();
+            List<MetadataResolver.Request> requests = MetadataResolver.createRequests(unresolved, subtitleFilePaths,
+                    report);
+            fileManager.writeUnmatchedReport(report);
+            resolvedCount.addAndGet(restored.size());
+            requestCount = restored.size() + requests.size();
+            Platform.runLater(() -> nodeManager.showProgress(resolvedCount.get(), requestCount));
+            new MetadataResolver(fileManager).stream(requests, (request, movieInfo) -> {
+                if (movieInfo != null) {
+                    movieInfo.setFolder(request.file.getParentFile().getName());
+                    loaded.add(movieInfo);
+                    arrivals.add(movieInfo);
+                }
+                resolvedCount.incrementAndGet();
+            });
+            Platform.runLater(() -> {
+                arrivals.flush();
+                nodeManager.hideProgress();
+                nodeManager.precomputeSimilarities();
+                metrics.libraryLoaded();
+            });
+            fileManager.saveLibrary(loaded);
+
+            refreshStaleMetadata(scanResult.movieFiles);
+            addedMovies = new MetadataResolver(fileManager);
+            LibraryWatcher watcher = Boolean.getBoolean("movieBrowser.watch")
+                    ? fileManager.watchLibrary(scanResult, libraryListener) : null;
+            addLateRoots(watcher);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        displayLoading(primaryStage);
-        allGenres = new HashSet<>();
+        metrics = new StartupMetrics();
+        Metrics.register(metrics);
         fileManager = new FileManager();
         nodeManager = new NodeManager(fileManager, primaryStage);
         fileManager.createCacheIfNoneExists();
+        fileManager.openMetadataStore();
 
         // Check if VLC location is specified
         fileManager.initVLC(primaryStage);
 
-        // Maps subtitle name to absolute path
-        HashMap<String, String> subtitleFilePaths = new HashMap<>();
-        Collection<File> subtitleFiles = fileManager.getSubtitleFiles();
-        for(File f : subtitleFiles) {
-            subtitleFilePaths.put(f.getName().replaceFirst("[.][^.]+$", "").trim().toLowerCase(),
-                    f.getAbsolutePath());
-        }
+        // The window comes up empty and fills in while the library loads
+        initWindow(primaryStage, new Library(0));
+        nodeManager.showResults();
+        nodeManager.setOnFirstPoster(metrics::firstPosterShown);
+        metrics.windowShown();
 
-        // Browse directory for movie files and find their info
-        Collection<File> files = fileManager.getMovieFiles();
-        ArrayList<MovieInfo> movieInfos = new ArrayList(files.size());
-        Multimap<String, MovieInfo> folderMap = LinkedListMultimap.create();
-        for(File f : files) {
-            Pattern r = Pattern.compile(fileRegex);
-            Matcher m = r.matcher(f.getName());
-            if (m.find()) { // This is a valid movie file
-                MovieInfo movieInfo = fileManager.getMovieFileInfo(f, subtitleFilePaths.get(f.getName()
-                        .replaceFirst("[.][^.]+$", "").trim().toLowerCase()), m.group(1),
-                        m.group(2).replaceAll(" ", "+"), m.group(2));
-
-                if(movieInfo != null) {
-                    movieInfos.add(movieInfo);
-                    allGenres.addAll(movieInfo.genres);
-                    folderMap.put(f.getParentFile().getName(), movieInfo);
-                }
-            } else {
-                System.out.println("NO MATCH FOR FILE:");
-                System.out.println(f.getName());
+        arrivals = new PulseBatcher<>(movieInfos -> {
+            nodeManager.addMovies(movieInfos);
+            if (requestCount >= 0) {
+                nodeManager.showProgress(resolvedCount.get(), requestCount);
             }
-        }
-        initWindow(primaryStage, movieInfos, folderMap);
-        nodeManager.setVisible(movieInfos);
+        });
+        Thread loader = new Thread(this::loadLibrary, "library-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Override
+    public void stop() {
+        fileManager.closePlayer();
     }
 
     public static void main(String[] args) {
         launch(args);
     }
-}
\ No newline at end of file
+}
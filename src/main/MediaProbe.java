@@ -0,0 +1,491 @@
+package main;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+// Reads duration, resolution and video codec from a Matroska (MKV/WebM) or MP4/MOV file's headers. Only element and
+// box headers are walked, with positional reads that skip over the media data, and only the few small regions that
+// hold the answers are read in full, so a multi-GB file costs a handful of reads of at most REGION_LIMIT bytes.
+class MediaProbe {
+    private static final int REGION_LIMIT = 1 << 20;
+
+    private static final int EBML = 0x1A45DFA3;
+    private static final int SEGMENT = 0x18538067;
+    private static final int SEEK_HEAD = 0x114D9B74;
+    private static final int SEEK = 0x4DBB;
+    private static final int SEEK_ID = 0x53AB;
+    private static final int SEEK_POSITION = 0x53AC;
+    private static final int INFO = 0x1549A966;
+    private static final int TIMECODE_SCALE = 0x2AD7B1;
+    private static final int DURATION = 0x4489;
+    private static final int TRACKS = 0x1654AE6B;
+    private static final int TRACK_ENTRY = 0xAE;
+    private static final int TRACK_TYPE = 0x83;
+    private static final int CODEC_ID = 0x86;
+    private static final int VIDEO = 0xE0;
+    private static final int PIXEL_WIDTH = 0xB0;
+    private static final int PIXEL_HEIGHT = 0xBA;
+    private static final int CLUSTER = 0x1F43B675;
+    private static final int VIDEO_TRACK = 1;
+
+    private static final int FTYP = fourcc("ftyp");
+    private static final int MOOV = fourcc("moov");
+    private static final int MVHD = fourcc("mvhd");
+    private static final int TRAK = fourcc("trak");
+    private static final int TKHD = fourcc("tkhd");
+    private static final int MDIA = fourcc("mdia");
+    private static final int HDLR = fourcc("hdlr");
+    private static final int MINF = fourcc("minf");
+    private static final int STBL = fourcc("stbl");
+    private static final int STSD = fourcc("stsd");
+    private static final int VIDE = fourcc("vide");
+
+    static class Result {
+        // For files that are not a container this understands, so they are not probed again
+        static final Result NONE = new Result(0, 0, 0, "");
+
+        final long durationMillis;
+        final int width, height;
+        // Short name such as "h264" or "hevc"; empty if unknown
+        final String videoCodec;
+
+        Result(long d, int w, int h, String c) {
+            this.durationMillis = d;
+            this.width = w;
+            this.height = h;
+            this.videoCodec = c;
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeLong(durationMillis);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeUTF(videoCodec);
+            } catch (IOException e) { // Not thrown by a ByteArrayOutputStream
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        // Null if the stored result can't be read
+        static Result decode(InputStream stored) {
+            try (DataInputStream in = new DataInputStream(stored)) {
+                return new Result(in.readLong(), in.readInt(), in.readInt(), in.readUTF());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private long durationMillis;
+    private int width, height;
+    private String codec = "";
+
+    private MediaProbe(FileChannel channel) throws IOException {
+        this.channel = channel;
+        fileSize = channel.size();
+    }
+
+    // Result.NONE if the file is neither Matroska nor MP4, or its headers are damaged
+    static Result probe(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MediaProbe probe = new MediaProbe(channel);
+            ByteBuffer magic = probe.read(0, 8);
+            if (magic.remaining() < 8) {
+                return Result.NONE;
+            }
+            boolean found;
+            try {
+                if (magic.getInt(0) == EBML) {
+                    found = probe.probeMatroska();
+                } else if (magic.getInt(4) == FTYP || magic.getInt(4) == MOOV) {
+                    found = probe.probeMp4();
+                } else {
+                    found = false;
+                }
+            } catch (RuntimeException e) { // Sizes that point outside their parent, truncated fields, ...
+                found = false;
+            }
+            return found ? new Result(probe.durationMillis, probe.width, probe.height, probe.codec) : Result.NONE;
+        }
+    }
+
+    // --- Matroska: EBML elements are [variable-length id][variable-length size][data] ---
+
+    private static class Element {
+        final int id;
+        final long dataStart, dataEnd;
+        final boolean unknownSize;
+
+        Element(int id, long dataStart, long dataEnd, boolean unknownSize) {
+            this.id = id;
+            this.dataStart = dataStart;
+            this.dataEnd = dataEnd;
+            this.unknownSize = unknownSize;
+        }
+    }
+
+    private boolean probeMatroska() throws IOException {
+        Element header = element(0, fileSize);
+        Element segment = header == null ? null : element(header.dataEnd, fileSize);
+        if (segment == null || segment.id != SEGMENT) {
+            return false;
+        }
+        long segmentEnd = segment.unknownSize ? fileSize : Math.min(segment.dataEnd, fileSize);
+
+        // Info and Tracks normally come before the first Cluster; the SeekHead says where they are otherwise
+        boolean info = false, tracks = false;
+        long infoPosition = -1, tracksPosition = -1;
+        long position = segment.dataStart;
+        while (position < segmentEnd && !(info && tracks)) {
+            Element e = element(position, segmentEnd);
+            if (e == null || e.id == CLUSTER || e.unknownSize) {
+                break;
+            }
+            if (e.id == INFO) {
+                info = parseInfo(region(e));
+            } else if (e.id == TRACKS) {
+                tracks = parseTracks(region(e));
+            } else if (e.id == SEEK_HEAD) {
+                ByteBuffer seekHead = region(e);
+                while (seekHead.hasRemaining()) {
+                    int id = readId(seekHead);
+                    ByteBuffer seek = slice(seekHead, readSize(seekHead));
+                    if (id != SEEK) {
+                        continue;
+                    }
+                    int seekId = 0;
+                    long seekPosition = -1;
+                    while (seek.hasRemaining()) {
+                        int childId = readId(seek);
+                        ByteBuffer child = slice(seek, readSize(seek));
+                        if (childId == SEEK_ID) {
+                            seekId = (int) readUnsigned(child);
+                        } else if (childId == SEEK_POSITION) {
+                            seekPosition = readUnsigned(child);
+                        }
+                    }
+                    if (seekId == INFO) {
+                        infoPosition = segment.dataStart + seekPosition;
+                    } else if (seekId == TRACKS) {
+                        tracksPosition = segment.dataStart + seekPosition;
+                    }
+                }
+            }
+            position = e.dataEnd;
+        }
+        if (!info && infoPosition >= 0) {
+            Element e = element(infoPosition, segmentEnd);
+            info = e != null && e.id == INFO && parseInfo(region(e));
+        }
+        if (!tracks && tracksPosition >= 0) {
+            Element e = element(tracksPosition, segmentEnd);
+            tracks = e != null && e.id == TRACKS && parseTracks(region(e));
+        }
+        return info || tracks;
+    }
+
+    private boolean parseInfo(ByteBuffer info) {
+        long timecodeScale = 1000000; // Nanoseconds per duration unit, unless given
+        double duration = -1;
+        while (info.hasRemaining()) {
+            int id = readId(info);
+            ByteBuffer value = slice(info, readSize(info));
+            if (id == TIMECODE_SCALE) {
+                timecodeScale = readUnsigned(value);
+            } else if (id == DURATION) {
+                duration = value.remaining() == 4 ? value.getFloat() : value.getDouble();
+            }
+        }
+        if (duration > 0) {
+            durationMillis = Math.round(duration * timecodeScale / 1000000.0);
+        }
+        return true;
+    }
+
+    // Takes the first video track
+    private boolean parseTracks(ByteBuffer tracks) {
+        while (tracks.hasRemaining()) {
+            int id = readId(tracks);
+            ByteBuffer entry = slice(tracks, readSize(tracks));
+            if (id != TRACK_ENTRY) {
+                continue;
+            }
+            long type = 0;
+            String codecId = "";
+            int w = 0, h = 0;
+            while (entry.hasRemaining()) {
+                int childId = readId(entry);
+                ByteBuffer child = slice(entry, readSize(entry));
+                if (childId == TRACK_TYPE) {
+                    type = readUnsigned(child);
+                } else if (childId == CODEC_ID) {
+                    codecId = readString(child);
+                } else if (childId == VIDEO) {
+                    while (child.hasRemaining()) {
+                        int videoId = readId(child);
+                        ByteBuffer value = slice(child, readSize(child));
+                        if (videoId == PIXEL_WIDTH) {
+                            w = (int) readUnsigned(value);
+                        } else if (videoId == PIXEL_HEIGHT) {
+                            h = (int) readUnsigned(value);
+                        }
+                    }
+                }
+            }
+            if (type == VIDEO_TRACK) {
+                width = w;
+                height = h;
+                codec = codecName(codecId);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Null past end
+    private Element element(long position, long end) throws IOException {
+        if (position >= end) {
+            return null;
+        }
+        ByteBuffer header = read(position, (int) Math.min(12, end - position));
+        int id = readId(header);
+        int sizeStart = header.position();
+        int sizeLength = vintLength(header.get(sizeStart));
+        long size = readSize(header);
+        boolean unknownSize = size == (1L << (7 * sizeLength)) - 1; // All ones
+        long dataStart = position + header.position();
+        return new Element(id, dataStart, unknownSize ? end : dataStart + size, unknownSize);
+    }
+
+    private ByteBuffer region(Element e) throws IOException {
+        long length = e.dataEnd - e.dataStart;
+        if (length > REGION_LIMIT) {
+            throw new IllegalStateException("Header element of " + length + " bytes");
+        }
+        return read(e.dataStart, (int) length);
+    }
+
+    // Ids keep their length marker bits, as the spec writes them
+    private static int readId(ByteBuffer buffer) {
+        int first = buffer.get() & 0xFF;
+        int length = vintLength((byte) first);
+        if (length > 4) {
+            throw new IllegalStateException("Bad element id");
+        }
+        int id = first;
+        for (int i = 1; i < length; i++) {
+            id = (id << 8) | (buffer.get() & 0xFF);
+        }
+        return id;
+    }
+
+    private static long readSize(ByteBuffer buffer) {
+        int first = buffer.get() & 0xFF;
+        int length = vintLength((byte) first);
+        long size = first & (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            size = (size << 8) | (buffer.get() & 0xFF);
+        }
+        return size;
+    }
+
+    private static int vintLength(byte first) {
+        int length = Integer.numberOfLeadingZeros(first & 0xFF) - 23;
+        if (length > 8) {
+            throw new IllegalStateException("Bad variable-length integer");
+        }
+        return length;
+    }
+
+    private static long readUnsigned(ByteBuffer value) {
+        long result = 0;
+        while (value.hasRemaining()) {
+            result = (result << 8) | (value.get() & 0xFF);
+        }
+        return result;
+    }
+
+    // --- MP4: boxes are [32-bit size][four-character type][data], with a 64-bit size after the type if size is 1 ---
+
+    private static class Box {
+        final int type;
+        final long dataStart, end;
+
+        Box(int type, long dataStart, long end) {
+            this.type = type;
+            this.dataStart = dataStart;
+            this.end = end;
+        }
+    }
+
+    // moov may come after the media data, whose box is skipped by its size
+    private boolean probeMp4() throws IOException {
+        for (Box box = box(0, fileSize); box != null; box = box(box.end, fileSize)) {
+            if (box.type == MOOV) {
+                return parseMoov(box);
+            }
+        }
+        return false;
+    }
+
+    private boolean parseMoov(Box moov) throws IOException {
+        boolean found = false;
+        for (Box box = box(moov.dataStart, moov.end); box != null; box = box(box.end, moov.end)) {
+            if (box.type == MVHD) {
+                ByteBuffer mvhd = read(box.dataStart, 32);
+                int version = mvhd.get() & 0xFF;
+                mvhd.position(version == 1 ? 20 : 12); // Skip flags and creation and modification times
+                long timescale = mvhd.getInt() & 0xFFFFFFFFL;
+                long duration = version == 1 ? mvhd.getLong() : mvhd.getInt() & 0xFFFFFFFFL;
+                if (timescale > 0 && duration > 0 && duration != 0xFFFFFFFFL) {
+                    durationMillis = duration * 1000 / timescale;
+                }
+                found = true;
+            } else if (box.type == TRAK && codec.isEmpty()) {
+                found |= parseTrak(box);
+            }
+        }
+        return found;
+    }
+
+    // Sets width, height and codec if this is a video track
+    private boolean parseTrak(Box trak) throws IOException {
+        int w = 0, h = 0;
+        boolean video = false;
+        String sampleFormat = "";
+        for (Box box = box(trak.dataStart, trak.end); box != null; box = box(box.end, trak.end)) {
+            if (box.type == TKHD) {
+                ByteBuffer tkhd = read(box.dataStart, 96);
+                int version = tkhd.get() & 0xFF;
+                // Width and height are 16.16 fixed point at the end, after times, ids, layer, volume and matrix
+                tkhd.position(version == 1 ? 88 : 76);
+                w = tkhd.getInt() >>> 16;
+                h = tkhd.getInt() >>> 16;
+            } else if (box.type == MDIA) {
+                for (Box mdia = box(box.dataStart, box.end); mdia != null; mdia = box(mdia.end, box.end)) {
+                    if (mdia.type == HDLR) {
+                        video = read(mdia.dataStart, 12).getInt(8) == VIDE;
+                    } else if (mdia.type == MINF) {
+                        Box stsd = find(find(mdia, STBL), STSD);
+                        if (stsd != null) {
+                            // Version and flags, entry count, then the first entry's size and format
+                            sampleFormat = readString(read(stsd.dataStart + 12, 4));
+                        }
+                    }
+                }
+            }
+        }
+        if (!video) {
+            return false;
+        }
+        width = w;
+        height = h;
+        codec = codecName(sampleFormat);
+        return true;
+    }
+
+    private Box find(Box parent, int type) throws IOException {
+        if (parent == null) {
+            return null;
+        }
+        for (Box box = box(parent.dataStart, parent.end); box != null; box = box(box.end, parent.end)) {
+            if (box.type == type) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    // Null past end or if the box does not fit in its parent
+    private Box box(long position, long end) throws IOException {
+        if (position + 8 > end) {
+            return null;
+        }
+        ByteBuffer header = read(position, (int) Math.min(16, end - position));
+        long size = header.getInt() & 0xFFFFFFFFL;
+        int type = header.getInt();
+        int headerSize = 8;
+        if (size == 1) {
+            if (header.remaining() < 8) {
+                return null;
+            }
+            size = header.getLong();
+            headerSize = 16;
+        } else if (size == 0) { // Extends to the end of the file
+            size = end - position;
+        }
+        if (size < headerSize || size > end - position) {
+            return null;
+        }
+        return new Box(type, position + headerSize, position + size);
+    }
+
+    private static int fourcc(String type) {
+        return ByteBuffer.wrap(type.getBytes(StandardCharsets.US_ASCII)).getInt();
+    }
+
+    // --- Shared ---
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // The next length bytes as their own buffer; the parent moves past them
+    private static ByteBuffer slice(ByteBuffer parent, long length) {
+        if (length > parent.remaining()) {
+            throw new IllegalStateException("Element runs past its parent");
+        }
+        ByteBuffer child = parent.slice();
+        child.limit((int) length);
+        parent.position(parent.position() + (int) length);
+        return child;
+    }
+
+    private static String readString(ByteBuffer value) {
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) { // Strings may be zero-padded
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.US_ASCII);
+    }
+
+    private static String codecName(String codecId) {
+        switch (codecId) {
+            case "V_MPEG4/ISO/AVC": case "avc1": case "avc3":
+                return "h264";
+            case "V_MPEGH/ISO/HEVC": case "hvc1": case "hev1":
+                return "hevc";
+            case "V_AV1": case "av01":
+                return "av1";
+            case "V_VP8":
+                return "vp8";
+            case "V_VP9": case "vp09":
+                return "vp9";
+            case "V_MPEG4/ISO/ASP": case "V_MPEG4/ISO/SP": case "V_MPEG4/ISO/AP": case "mp4v":
+                return "mpeg4";
+            case "V_MPEG2":
+                return "mpeg2";
+            case "V_MPEG1":
+                return "mpeg1";
+            default:
+                return codecId.toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package main;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MetadataResolver {
+    static final int DEFAULT_CONCURRENCY = 8;
+
+    static class Request {
+        final File file;
+        final String subtitleAbsolutePath, year, title, originalTitle;
+
+        Request(File f, String s, String y, String t, String o) {
+            this.file = f;
+            this.subtitleAbsolutePath = s;
+            this.year = y;
+            this.title = t;
+            this.originalTitle = o;
+        }
+    }
+
+    // Called on a resolver thread as each lookup finishes; movieInfo is null if the lookup failed
+    interface Listener {
+        void resolved(Request request, MovieInfo movieInfo);
+    }
+
+    private final FileManager fileManager;
+    private final int concurrency;
+    // Started by the first submit and kept for the ones after it
+    private ExecutorService submitted;
+
+    MetadataResolver(FileManager f) {
+        this(f, Integer.getInteger("movieBrowser.concurrency", DEFAULT_CONCURRENCY));
+    }
+
+    MetadataResolver(FileManager f, int c) {
+        if (c < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1, got " + c);
+        }
+        fileManager = f;
+        concurrency = c;
+    }
+
+    // Maps subtitle name to absolute path
+    static HashMap<String, String> subtitleFilePaths(Collection<File> subtitleFiles) {
+        HashMap<String, String> subtitleFilePaths = new HashMap<>();
+        for(File f : subtitleFiles) {
+            subtitleFilePaths.put(FileNameParser.subtitleKey(f.getName()), f.getAbsolutePath());
+        }
+        return subtitleFilePaths;
+    }
+
+    static String subtitleFor(File movieFile, Map<String, String> subtitleFilePaths) {
+        return subtitleFilePaths.get(FileNameParser.subtitleKey(movieFile.getName()));
+    }
+
+    // Files no naming convention understands are left out, and listed in report if one is given
+    static List<Request> createRequests(Collection<File> movieFiles, Map<String, String> subtitleFilePaths,
+                                        FileNameParser.Report report) {
+        return FileNameParser.DEFAULT.parseAll(movieFiles, subtitleFilePaths, report);
+    }
+
+    // Null if no naming convention understands the file
+    static Request createRequest(File f, Map<String, String> subtitleFilePaths) {
+        return FileNameParser.DEFAULT.parse(f, subtitleFilePaths);
+    }
+
+    Library resolve(List<Request> requests) throws InterruptedException {
+        return resolve(requests, null);
+    }
+
+    // Hands each result to the listener as it comes in and returns once all are done, without building a library
+    void stream(List<Request> requests, Listener listener) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, requests.size())),
+                daemonThreadFactory("metadata-resolver"));
+        try {
+            for (Request request : requests) {
+                executor.execute(() -> lookUp(request, listener));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // For files that turn up one at a time, e.g. from the library watcher: returns at once, and the listener hears
+    // about the result on a resolver thread
+    synchronized void submit(Request request, Listener listener) {
+        if (submitted == null) {
+            submitted = Executors.newFixedThreadPool(concurrency, daemonThreadFactory("metadata-submitted"));
+        }
+        submitted.execute(() -> lookUp(request, listener));
+    }
+
+    private void lookUp(Request request, Listener listener) {
+        MovieInfo movieInfo = null;
+        try {
+            movieInfo = fileManager.getMovieFileInfo(request.file, request.subtitleAbsolutePath, request.year,
+                    request.title, request.originalTitle);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            listener.resolved(request, movieInfo);
+        }
+    }
+
+    // Lookups run concurrently, but results are collected in request order so the library is deterministic
+    Library resolve(List<Request> requests, Listener listener) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, requests.size())),
+                daemonThreadFactory("metadata-resolver"));
+        try {
+            List<Future<MovieInfo>> futures = new ArrayList<>(requests.size());
+            for (Request request : requests) {
+                futures.add(executor.submit(() -> {
+                    MovieInfo movieInfo = null;
+                    try {
+                        movieInfo = fileManager.getMovieFileInfo(request.file, request.subtitleAbsolutePath,
+                                request.year, request.title, request.originalTitle);
+                        return movieInfo;
+                    } finally {
+                        if (listener != null) {
+                            listener.resolved(request, movieInfo);
+                        }
+                    }
+                }));
+            }
+
+            Library library = new Library(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                MovieInfo movieInfo = null;
+                try {
+                    movieInfo = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+                if (movieInfo != null) {
+                    library.add(movieInfo, requests.get(i).file.getParentFile().getName());
+                }
+            }
+            return library;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Looks stale cache entries up again without blocking the caller; the listener only hears about lookups that
+    // succeeded, since a failed one leaves the cached answer in place
+    void refresh(List<Request> requests, Listener listener) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, requests.size()),
+                daemonThreadFactory("metadata-refresh"));
+        for (Request request : requests) {
+            executor.execute(() -> {
+                MovieInfo movieInfo = fileManager.refreshMovieFileInfo(request.file, request.subtitleAbsolutePath,
+                        request.year, request.title, request.originalTitle);
+                if (movieInfo != null) {
+                    listener.resolved(request, movieInfo);
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,296 @@
+package main;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Append-only log of key -> OMDb response records, each stamped with the time it was fetched. The whole file is read
+// into memory in one pass and an index of (offset, length) pairs into that buffer is kept per key; later records for
+// a key win.
+class MetadataStore implements Closeable {
+    static final String STORE_FILE = "metadata.db";
+    static final String BAD_FILE_SUFFIX = ".bad";
+    private static final int MAGIC = 0x4D424D44; // "MBMD"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    // [int keyLength][key][long fetchedAt][int valueLength][value]
+    private static final int RECORD_OVERHEAD = 16;
+
+    private final File file;
+    private final HashMap<String, Long> index;
+    private byte[] data;
+    private int size;
+    private DataOutputStream out;
+
+    private MetadataStore(File file, byte[] data, int size, HashMap<String, Long> index) {
+        this.file = file;
+        this.data = data;
+        this.size = size;
+        this.index = index;
+    }
+
+    static MetadataStore open(File cacheDir) throws IOException {
+        File file = new File(cacheDir, STORE_FILE);
+        boolean migrate = !file.exists();
+        if (migrate) {
+            writeHeader(file);
+        }
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        HashMap<String, Long> index = new HashMap<>();
+        int end;
+        try {
+            end = readRecords(data, index);
+        } catch (IOException e) { // Only a cache: keep the bad file for a look, and start over
+            e.printStackTrace();
+            Files.move(file.toPath(), new File(file.getPath() + BAD_FILE_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            writeHeader(file);
+            data = Files.readAllBytes(file.toPath());
+            index.clear();
+            end = readRecords(data, index);
+        }
+        if (end < data.length) { // Truncated tail from an interrupted write
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(end);
+            }
+        }
+
+        MetadataStore store = new MetadataStore(file, data, end, index);
+        if (store.deadBytes() > store.liveBytes() && store.deadBytes() > 1 << 20) {
+            store.compact();
+        }
+        store.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (migrate) {
+            store.migrateJsonFiles(cacheDir);
+        }
+        return store;
+    }
+
+    synchronized String get(String key) {
+        Long location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        return new String(data, offset(location), length(location), StandardCharsets.UTF_8);
+    }
+
+    // Streams the stored bytes without decoding them; appends never move bytes that are already written
+    synchronized InputStream getStream(String key) {
+        Long location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        return new ByteArrayInputStream(data, offset(location), length(location));
+    }
+
+    // Milliseconds since the epoch, or -1 if the key is not stored
+    synchronized long fetchedAt(String key) {
+        Long location = index.get(key);
+        return location == null ? -1 : readLong(data, offset(location) - 12);
+    }
+
+    synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    synchronized void put(String key, String value) {
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    synchronized void put(String key, byte[] valueBytes) {
+        put(key, valueBytes, System.currentTimeMillis());
+    }
+
+    // Stores fromKey's value under toKey as well, keeping when it was fetched; false if fromKey is not stored
+    synchronized boolean copy(String fromKey, String toKey) {
+        Long location = index.get(fromKey);
+        if (location == null) {
+            return false;
+        }
+        put(toKey, Arrays.copyOfRange(data, offset(location), offset(location) + length(location)),
+                fetchedAt(fromKey));
+        return true;
+    }
+
+    private void put(String key, byte[] valueBytes, long fetchedAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        try {
+            writeRecord(out, keyBytes, fetchedAt, valueBytes);
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        append(keyBytes, fetchedAt, valueBytes);
+    }
+
+    synchronized int entryCount() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void append(byte[] keyBytes, long fetchedAt, byte[] valueBytes) {
+        int recordSize = RECORD_OVERHEAD + keyBytes.length + valueBytes.length;
+        if (size + recordSize > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + recordSize));
+        }
+        int position = size;
+        writeInt(data, position, keyBytes.length);
+        System.arraycopy(keyBytes, 0, data, position + 4, keyBytes.length);
+        position += 4 + keyBytes.length;
+        writeLong(data, position, fetchedAt);
+        position += 8;
+        writeInt(data, position, valueBytes.length);
+        System.arraycopy(valueBytes, 0, data, position + 4, valueBytes.length);
+        index.put(new String(keyBytes, StandardCharsets.UTF_8), location(position + 4, valueBytes.length));
+        size += recordSize;
+    }
+
+    private long liveBytes() {
+        long live = 0;
+        for (Map.Entry<String, Long> entry : index.entrySet()) {
+            live += RECORD_OVERHEAD + entry.getKey().getBytes(StandardCharsets.UTF_8).length
+                    + length(entry.getValue());
+        }
+        return live;
+    }
+
+    private long deadBytes() {
+        return size - HEADER_SIZE - liveBytes();
+    }
+
+    // Rewrites the log with only the latest record for each key
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        writeHeader(tmp);
+        byte[] old = data;
+        HashMap<String, Long> oldIndex = new HashMap<>(index);
+        data = new byte[HEADER_SIZE];
+        System.arraycopy(old, 0, data, 0, HEADER_SIZE);
+        size = HEADER_SIZE;
+        index.clear();
+        try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp, true)))) {
+            for (Map.Entry<String, Long> entry : oldIndex.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] valueBytes = Arrays.copyOfRange(old, offset(entry.getValue()),
+                        offset(entry.getValue()) + length(entry.getValue()));
+                long fetchedAt = readLong(old, offset(entry.getValue()) - 12);
+                writeRecord(tmpOut, keyBytes, fetchedAt, valueBytes);
+                append(keyBytes, fetchedAt, valueBytes);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Imports the old one-file-per-movie ".<filename>.json" caches and removes them once they are in the log
+    private void migrateJsonFiles(File cacheDir) {
+        File[] jsonFiles = cacheDir.listFiles((dir, name) -> name.startsWith(".") && name.endsWith(".json"));
+        if (jsonFiles == null) {
+            return;
+        }
+        List<File> migrated = new ArrayList<>(jsonFiles.length);
+        for (File jsonFile : jsonFiles) {
+            try {
+                String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+                String name = jsonFile.getName();
+                put(name.substring(1, name.length() - ".json".length()), json);
+                migrated.add(jsonFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (File jsonFile : migrated) {
+            if (!jsonFile.delete()) {
+                System.out.println("Could not remove migrated cache file " + jsonFile);
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] keyBytes, long fetchedAt, byte[] valueBytes)
+            throws IOException {
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeLong(fetchedAt);
+        out.writeInt(valueBytes.length);
+        out.write(valueBytes);
+    }
+
+    private static void writeHeader(File file) throws IOException {
+        try (DataOutputStream header = new DataOutputStream(new FileOutputStream(file))) {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+        }
+    }
+
+    // Returns the end of the last complete record
+    private static int readRecords(byte[] data, HashMap<String, Long> index) throws IOException {
+        if (data.length < HEADER_SIZE || readInt(data, 0) != MAGIC) {
+            throw new IOException("Not a metadata store");
+        }
+        if (readInt(data, 4) != VERSION) {
+            throw new IOException("Unsupported metadata store version " + readInt(data, 4));
+        }
+        int position = HEADER_SIZE;
+        while (position + 4 <= data.length) {
+            int keyLength = readInt(data, position);
+            if (keyLength < 0 || position + (long) RECORD_OVERHEAD + keyLength > data.length) {
+                break;
+            }
+            int valueLength = readInt(data, position + 12 + keyLength);
+            int valueOffset = position + RECORD_OVERHEAD + keyLength;
+            if (valueLength < 0 || (long) valueOffset + valueLength > data.length) {
+                break;
+            }
+            index.put(new String(data, position + 4, keyLength, StandardCharsets.UTF_8),
+                    location(valueOffset, valueLength));
+            position = valueOffset + valueLength;
+        }
+        return position;
+    }
+
+    private static long location(int offset, int length) {
+        return ((long) offset << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    private static int offset(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int length(long location) {
+        return (int) location;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] b, int i) {
+        return ((long) readInt(b, i) << 32) | (readInt(b, i + 4) & 0xFFFFFFFFL);
+    }
+
+    private static void writeLong(byte[] b, int i, long v) {
+        writeInt(b, i, (int) (v >>> 32));
+        writeInt(b, i + 4, (int) v);
+    }
+
+    private static void writeInt(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+    }
+}
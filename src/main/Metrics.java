@@ -0,0 +1,211 @@
+package main;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms for the hot paths, readable over JMX while the app runs. Recording is lock-free so
+// it can be called from resolver, poster and FX threads alike. The same spots also emit the JFR events in PerfEvents.
+class Metrics implements MovieBrowserMXBean {
+    static final Metrics INSTANCE = new Metrics();
+    private static final String OBJECT_NAME = "MovieBrowser:type=Metrics";
+
+    // Power-of-two buckets of microseconds; bucket i holds samples of at most 2^i - 1 us
+    static class Timer {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros)));
+            totalMicros.add(micros);
+            maxMicros.accumulate(micros);
+        }
+
+        // Records the time since startNanos, a System.nanoTime() taken when the operation began
+        void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        Map<String, Long> summary() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long max = maxMicros.get();
+            Map<String, Long> summary = new LinkedHashMap<>();
+            summary.put("count", total);
+            summary.put("meanMicros", total == 0 ? 0 : totalMicros.sum() / total);
+            summary.put("p50Micros", percentile(counts, total, 0.50, max));
+            summary.put("p95Micros", percentile(counts, total, 0.95, max));
+            summary.put("p99Micros", percentile(counts, total, 0.99, max));
+            summary.put("maxMicros", max);
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    summary.put("le" + upperBound(i) + "us", counts[i]);
+                }
+            }
+            return summary;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            totalMicros.reset();
+            maxMicros.reset();
+        }
+
+        // Upper bound of the bucket the percentile falls in, so at most twice the true value
+        private static long percentile(long[] counts, long total, double p, long max) {
+            long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return 0;
+        }
+
+        private static long upperBound(int bucket) {
+            return (1L << bucket) - 1;
+        }
+    }
+
+    final Timer scanTime = new Timer();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder cacheMisses = new LongAdder();
+    final Timer cacheReadTime = new Timer();
+    final LongAdder apiRequests = new LongAdder();
+    final LongAdder apiFailures = new LongAdder();
+    final Timer apiLatency = new Timer();
+    final Timer mediaProbeTime = new Timer();
+    final Timer posterFetchTime = new Timer();
+    final Timer posterDecodeTime = new Timer();
+    final Timer filterTime = new Timer();
+    final Timer sortTime = new Timer();
+    private volatile StartupMetrics startupMetrics;
+
+    private Metrics() {
+    }
+
+    // Publishes INSTANCE on the platform MBean server; startupMetrics may be null when there is no window
+    static void register(StartupMetrics startupMetrics) {
+        INSTANCE.startupMetrics = startupMetrics;
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public long getWindowShownMillis() {
+        return startupMetrics == null ? -1 : startupMetrics.getWindowShownMillis();
+    }
+
+    @Override
+    public long getFirstPosterMillis() {
+        return startupMetrics == null ? -1 : startupMetrics.getFirstPosterMillis();
+    }
+
+    @Override
+    public long getLibraryLoadedMillis() {
+        return startupMetrics == null ? -1 : startupMetrics.getLibraryLoadedMillis();
+    }
+
+    @Override
+    public Map<String, Long> getScanTime() {
+        return scanTime.summary();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+
+    @Override
+    public Map<String, Long> getCacheReadTime() {
+        return cacheReadTime.summary();
+    }
+
+    @Override
+    public long getApiRequests() {
+        return apiRequests.sum();
+    }
+
+    @Override
+    public long getApiFailures() {
+        return apiFailures.sum();
+    }
+
+    @Override
+    public Map<String, Long> getApiLatency() {
+        return apiLatency.summary();
+    }
+
+    @Override
+    public Map<String, Long> getMediaProbeTime() {
+        return mediaProbeTime.summary();
+    }
+
+    @Override
+    public Map<String, Long> getPosterFetchTime() {
+        return posterFetchTime.summary();
+    }
+
+    @Override
+    public Map<String, Long> getPosterDecodeTime() {
+        return posterDecodeTime.summary();
+    }
+
+    @Override
+    public Map<String, Long> getFilterTime() {
+        return filterTime.summary();
+    }
+
+    @Override
+    public Map<String, Long> getSortTime() {
+        return sortTime.summary();
+    }
+
+    @Override
+    public void reset() {
+        for (Timer timer : new Timer[]{scanTime, cacheReadTime, apiLatency, mediaProbeTime, posterFetchTime,
+                posterDecodeTime, filterTime, sortTime}) {
+            timer.reset();
+        }
+        cacheHits.reset();
+        cacheMisses.reset();
+        apiRequests.reset();
+        apiFailures.reset();
+    }
+}
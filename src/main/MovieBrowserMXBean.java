@@ -0,0 +1,44 @@
+package main;
+
+import java.util.Map;
+
+// Published by Metrics as "MovieBrowser:type=Metrics" for JConsole, VisualVM and the like. Public because the
+// platform MBean server only introspects public interfaces.
+//
+// Each timing attribute maps "count", "meanMicros", "p50Micros", "p95Micros", "p99Micros" and "maxMicros" to
+// their value, plus one "le<N>us" entry per non-empty histogram bucket counting samples that took at most N us.
+public interface MovieBrowserMXBean {
+    long getWindowShownMillis();
+
+    long getFirstPosterMillis();
+
+    long getLibraryLoadedMillis();
+
+    Map<String, Long> getScanTime();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRatio();
+
+    Map<String, Long> getCacheReadTime();
+
+    long getApiRequests();
+
+    long getApiFailures();
+
+    Map<String, Long> getApiLatency();
+
+    Map<String, Long> getMediaProbeTime();
+
+    Map<String, Long> getPosterFetchTime();
+
+    Map<String, Long> getPosterDecodeTime();
+
+    Map<String, Long> getFilterTime();
+
+    Map<String, Long> getSortTime();
+
+    void reset();
+}
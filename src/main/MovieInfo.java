@@ -1,37 +1,214 @@
 package main;
 
-import javafx.scene.layout.VBox;
-
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.*;
 
+// Values shared across many movies are dictionary codes; strings are only kept for what is unique per movie.
 public class MovieInfo {
-    String title, year, plot, posterURL, absolutePath, subtitleAbsolutePath, imdbRating, director;
+    private static final int[] NO_TAGS = new int[0];
+
+    String title, plot, posterURL, absolutePath, subtitleAbsolutePath;
     int runtime;
-    HashSet<String> genres;
-    HashSet<String> tags;
+    int id;
+    // Parsed once for sorting; 0 and NaN mean unknown
+    int yearKey;
+    float ratingKey;
+
+    long genreMask;
+    int[] tagIds;
+    int yearCode, ratingCode, directorCode, folderCode;
+    // From the file's own headers, see MediaProbe; 0 and FULL mean unknown
+    int width, height;
+    int codecCode;
 
-    VBox view;
     MovieInfo(String t, String y, String g, String p, String pu, String a, String s, String i, String d, int r) {
-        this.year = y;
+        this.yearCode = Dictionary.VALUES.intern(y);
         this.title = t;
-        this.genres = new HashSet<>(Arrays.asList(g.split(", ")));
+        this.genreMask = genreMask(g);
         this.plot = p;
         this.posterURL = pu;
         this.absolutePath = a;
         this.subtitleAbsolutePath = s;
-        this.imdbRating = i;
-        this.director = d;
+        this.ratingCode = Dictionary.VALUES.intern(i);
+        this.directorCode = Dictionary.DIRECTORS.intern(d);
         this.runtime = r;
-        this.view = null;
+        this.yearKey = parseYear(y);
+        this.ratingKey = parseRating(i);
+        this.folderCode = Dictionary.FULL;
+        this.codecCode = Dictionary.FULL;
+
+        this.tagIds = tagIds(t, d, y, g);
+    }
+
+    // Restores a movie saved in a LibrarySnapshot; the codes must already be in the shared dictionaries
+    MovieInfo(String t, String p, String pu, String a, String s, int r, int yearKey, float ratingKey, long genreMask,
+              int[] tagIds, int yearCode, int ratingCode, int directorCode, int width, int height, int codecCode) {
+        this.title = t;
+        this.plot = p;
+        this.posterURL = pu;
+        this.absolutePath = a;
+        this.subtitleAbsolutePath = s;
+        this.runtime = r;
+        this.yearKey = yearKey;
+        this.ratingKey = ratingKey;
+        this.genreMask = genreMask;
+        this.tagIds = tagIds;
+        this.yearCode = yearCode;
+        this.ratingCode = ratingCode;
+        this.directorCode = directorCode;
+        this.folderCode = Dictionary.FULL;
+        this.width = width;
+        this.height = height;
+        this.codecCode = codecCode;
+    }
+
+    String year() {
+        return Dictionary.VALUES.get(yearCode);
+    }
+
+    String imdbRating() {
+        return Dictionary.VALUES.get(ratingCode);
+    }
+
+    String director() {
+        return Dictionary.DIRECTORS.get(directorCode);
+    }
+
+    String folder() {
+        return folderCode == Dictionary.FULL ? null : Dictionary.FOLDERS.get(folderCode);
+    }
+
+    void setFolder(String folder) {
+        folderCode = Dictionary.FOLDERS.intern(folder);
+    }
+
+    String videoCodec() {
+        return codecCode == Dictionary.FULL ? null : Dictionary.VALUES.get(codecCode);
+    }
+
+    // "2160p", "1080p", "720p" or "sd" by whichever dimension is larger for its class, so a widescreen 1920x800
+    // still counts as 1080p; null if unknown
+    String resolution() {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        if (width >= 3200 || height >= 1800) {
+            return "2160p";
+        }
+        if (width >= 1800 || height >= 1000) {
+            return "1080p";
+        }
+        if (width >= 1200 || height >= 700) {
+            return "720p";
+        }
+        return "sd";
+    }
+
+    // Fills in the runtime OMDb did not know, e.g. for movies it did not find, and makes resolution and codec
+    // searchable. Call before the movie is added to a library, whose search index reads tagIds once.
+    void setMedia(MediaProbe.Result media) {
+        width = media.width;
+        height = media.height;
+        if (!media.videoCodec.isEmpty()) {
+            codecCode = Dictionary.VALUES.intern(media.videoCodec);
+        }
+        if (runtime == 0 && media.durationMillis > 0) {
+            runtime = (int) Math.max(1, Math.round(media.durationMillis / 60000.0));
+        }
+        String resolution = resolution();
+        String codec = videoCodec();
+        int[] mediaTags = tagIds(resolution == null ? "" : resolution, codec == null ? "" : codec);
+        if (mediaTags.length > 0) {
+            int[] merged = Arrays.copyOf(tagIds, tagIds.length + mediaTags.length);
+            System.arraycopy(mediaTags, 0, merged, tagIds.length, mediaTags.length);
+            tagIds = sortedDistinct(merged, merged.length);
+        }
+    }
+
+    boolean hasGenre(String genre) {
+        int code = Dictionary.GENRES.code(genre);
+        return code != Dictionary.FULL && (genreMask & (1L << code)) != 0;
+    }
+
+    List<String> genres() {
+        List<String> genres = new ArrayList<>(Long.bitCount(genreMask));
+        for (long mask = genreMask; mask != 0; mask &= mask - 1) {
+            genres.add(Dictionary.GENRES.get(Long.numberOfTrailingZeros(mask)));
+        }
+        return genres;
+    }
+
+    List<String> tags() {
+        List<String> tags = new ArrayList<>(tagIds.length);
+        for (int tagId : tagIds) {
+            tags.add(Dictionary.TOKENS.get(tagId));
+        }
+        return tags;
+    }
+
+    private static long genreMask(String genres) {
+        long mask = 0;
+        for (String genre : genres.split(", ")) {
+            if (genre.isEmpty()) { // No genre when the movie was not found
+                continue;
+            }
+            int code = Dictionary.GENRES.intern(genre);
+            if (code == Dictionary.FULL) {
+                System.out.println("Too many distinct genres, ignoring " + genre);
+                continue;
+            }
+            mask |= 1L << code;
+        }
+        return mask;
+    }
+
+    // Sorted, distinct token codes of all the given texts
+    private static int[] tagIds(String... texts) {
+        int[] tags = new int[16];
+        int count = 0;
+        for (String text : texts) {
+            for (String token : SearchIndex.tokenize(text)) {
+                if (count == tags.length) {
+                    tags = Arrays.copyOf(tags, count * 2);
+                }
+                tags[count++] = Dictionary.TOKENS.intern(token);
+            }
+        }
+        return sortedDistinct(tags, count);
+    }
+
+    private static int[] sortedDistinct(int[] tags, int count) {
+        if (count == 0) {
+            return NO_TAGS;
+        }
+        Arrays.sort(tags, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (tags[i] != tags[distinct - 1]) {
+                tags[distinct++] = tags[i];
+            }
+        }
+        return Arrays.copyOf(tags, distinct);
+    }
 
-        this.tags = new HashSet<>();
-        tags.addAll(Arrays.asList(t.toLowerCase().split(" ")));
-        tags.addAll(Arrays.asList(d.toLowerCase().split(" ")));
-        tags.add(y);
+    private static int parseYear(String year) {
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i < year.length() && digits < 4; i++) {
+            char c = year.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            digits++;
+        }
+        return digits == 4 ? value : 0;
     }
 
-    void setView(VBox v) {
-        this.view = v;
+    private static float parseRating(String rating) {
+        try {
+            return Float.parseFloat(rating);
+        } catch (NumberFormatException e) { // "N/A" or empty when not found
+            return Float.NaN;
+        }
     }
-}
\ No newline at end of file
+}
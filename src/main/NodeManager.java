@@ -1,220 +1,180 @@
 package main;
 
-import com.google.common.collect.Multimap;
-import javafx.collections.FXCollections;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Node;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.input.KeyCode;
-import javafx.scene.input.MouseButton;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
-import javafx.scene.layout.VBox;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
 import java.io.File;
 import java.util.*;
+import java.util.function.Consumer;
 
 class NodeManager {
-    static class yearAscendingComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo2.year.compareTo(movieInfo1.year);
-        }
-    }
-
-    static class yearDescendingComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo1.year.compareTo(movieInfo2.year);
-        }
-    }
-
-    static class titleComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo2.title.compareTo(movieInfo1.title);
-        }
-    }
-
-    static class imdbRatingAscendingComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo2.imdbRating.compareTo(movieInfo1.imdbRating);
-        }
-    }
-
-    static class imdbRatingDescendingComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo1.imdbRating.compareTo(movieInfo2.imdbRating);
-        }
-    }
-
-    static class runtimeAscendingComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo2.runtime - movieInfo1.runtime;
-        }
-    }
-    static class runtimeDescendingComparator implements Comparator<MovieInfo> {
-        @Override
-        public int compare(MovieInfo movieInfo1, MovieInfo movieInfo2) {
-            return movieInfo1.runtime - movieInfo2.runtime;
-        }
-    }
-
     static final int POSTER_WIDTH = 150;
     private FileManager fileManager;
+    private PosterLoader posterLoader;
+    private PosterGrid posterGrid;
 
-    private Comparator<MovieInfo> currentComparator;
-    private List<MovieInfo> inCurrentFolder;
+    private SortOrder currentSortOrder;
     private List<MovieInfo> currentlyDisplayed;
+    private final HashMap<String, Integer> folderCounts;
+    private final HashMap<String, Integer> genreCounts;
+    private final IntegerProperty facetCountsVersion;
 
+    private String currentFolder;
     private String currentGenre;
+    private String currentQuery;
+    // Set while the grid shows the movies most like this one instead of the filtered library
+    private MovieInfo similarTo;
     private HashSet<MovieInfo> randomPool;
+    private boolean similaritiesReady;
     private Stage primaryStage;
 
+    private Library library;
+    private LibraryQueries queries;
+    // Every movie handed to the library, by absolute path
+    private final HashMap<String, MovieInfo> moviesByPath;
+    private ComboBox<String> folderComboBox;
+    private ComboBox<String> genreComboBox;
+    private Label progressLabel;
+    private Button backToLibraryButton;
+
     NodeManager(FileManager f, Stage p) {
-        currentComparator = new yearAscendingComparator();
-        currentGenre = "All";
+        currentSortOrder = SortOrder.YEAR_ASCENDING;
+        currentFolder = FacetIndex.ALL;
+        currentGenre = FacetIndex.ALL;
+        currentQuery = "";
         randomPool = new HashSet<>();
-        inCurrentFolder = new ArrayList<>();
+        moviesByPath = new HashMap<>();
+        folderCounts = new HashMap<>();
+        genreCounts = new HashMap<>();
+        facetCountsVersion = new SimpleIntegerProperty();
         currentlyDisplayed = new ArrayList<>();
         fileManager = f;
         primaryStage = p;
+        posterLoader = new PosterLoader(f.getThumbnailCache());
     }
 
-    void setInCurrentFolder(List<MovieInfo> movieInfos) {
-        inCurrentFolder = movieInfos;
+    // The grid and the facet counts change once the query's result comes back from the query thread
+    void showResults() {
+        queries.run(new LibraryQueries.Query(currentFolder, currentGenre, currentQuery, currentSortOrder, similarTo),
+                this::publish);
     }
 
-    void setInvisible(List<MovieInfo> movieInfos) {
-        for (MovieInfo movieInfo : movieInfos) {
-            if (movieInfo.view != null) {
-                movieInfo.view.setVisible(false);
-                movieInfo.view.setManaged(false);
-            }
+    private void publish(LibraryQueries.Result result) {
+        currentlyDisplayed = result.movies;
+        posterGrid.setMovies(currentlyDisplayed);
+        if (result.folderCounts != null) {
+            folderCounts.clear();
+            folderCounts.putAll(result.folderCounts);
+            genreCounts.clear();
+            genreCounts.putAll(result.genreCounts);
+            facetCountsVersion.set(facetCountsVersion.get() + 1);
         }
     }
 
-    void setVisible(List<MovieInfo> movieInfos) {
-        movieInfos.sort(currentComparator);
-        for (MovieInfo movieInfo : movieInfos) {
-            if (movieInfo.view != null) {
-                movieInfo.view.setVisible(true);
-                movieInfo.view.setManaged(true);
-                movieInfo.view.toBack();
-            }
-        }
-        currentlyDisplayed = movieInfos;
+    // Any change to the filters goes back from "more like this" to the library
+    private void showFiltered() {
+        setSimilarTo(null);
+        showResults();
+    }
+
+    private void setSimilarTo(MovieInfo movieInfo) {
+        similarTo = movieInfo;
+        backToLibraryButton.setVisible(movieInfo != null);
+        backToLibraryButton.setManaged(movieInfo != null);
+    }
+
+    boolean canShowSimilar() {
+        return similaritiesReady;
+    }
+
+    void showMoreLike(MovieInfo movieInfo) {
+        setSimilarTo(movieInfo);
+        showResults();
     }
 
-    private List<MovieInfo> filterGenre(Collection<MovieInfo> toFilter, String genre) {
-        if(genre.equals("All")) {
-            return new ArrayList<>(toFilter);
+    // Ranks the whole library in the background once it has loaded; later changes keep the index current
+    void precomputeSimilarities() {
+        queries.precomputeSimilarities(() -> similaritiesReady = true);
+    }
+
+    // Shows how many movies picking each entry would leave, given the other filters. The combo box drops and recreates
+    // cells, so a cell only listens weakly for new counts and can be collected once it is gone.
+    private class FacetCell extends ListCell<String> {
+        private final Map<String, Integer> counts;
+        private final ChangeListener<Number> countsChanged = (observable, before, after) ->
+                updateText(getItem(), isEmpty());
+
+        FacetCell(Map<String, Integer> c) {
+            counts = c;
+            facetCountsVersion.addListener(new WeakChangeListener<>(countsChanged));
+        }
+
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
+            updateText(item, empty);
         }
-        List<MovieInfo> filtered = new ArrayList<>(toFilter.size());
-        for(MovieInfo movieInfo : toFilter) {
-            if(movieInfo.genres.contains(genre)) {
-                filtered.add(movieInfo);
+
+        private void updateText(String item, boolean empty) {
+            if (empty || item == null) {
+                setText(null);
+            } else {
+                setText(item + " (" + counts.getOrDefault(item, 0) + ")");
             }
         }
-        return filtered;
     }
 
-    private ComboBox<String> generateEnclosingFolderComboBox(Multimap<String, MovieInfo> folderMap,
-                                                     ArrayList<MovieInfo> movieInfos) {
+    private ComboBox<String> generateFacetComboBox(Collection<String> names, Map<String, Integer> counts,
+                                                   Consumer<String> onSelect) {
         ComboBox<String> comboBox = new ComboBox<String>();
-        comboBox.getItems().add("All");
-        comboBox.getItems().addAll(FXCollections.observableArrayList(folderMap.keySet()));
-        EventHandler<ActionEvent> event =
-            e -> {
-                String selected = comboBox.getValue();
-                setInvisible(movieInfos);
-                if (selected.equals("All")) {
-                    inCurrentFolder = movieInfos;
-                    List<MovieInfo> toShow = filterGenre(inCurrentFolder, currentGenre);
-                    setVisible(toShow);
-                } else {
-                    inCurrentFolder = new ArrayList<>(folderMap.get(selected));
-                    List<MovieInfo> toShow = filterGenre(inCurrentFolder, currentGenre);
-                    setVisible(toShow);
-                }
-            };
-        comboBox.setOnAction(event);
+        comboBox.getItems().add(FacetIndex.ALL);
+        comboBox.getItems().addAll(names);
+        comboBox.setCellFactory(listView -> new FacetCell(counts));
+        comboBox.setButtonCell(new FacetCell(counts));
+        comboBox.setOnAction(e -> onSelect.accept(comboBox.getValue()));
         comboBox.getSelectionModel().selectFirst();
         return comboBox;
     }
 
-    private ComboBox<String> generateSortByComboBox() {
-        ComboBox<String> comboBox = new ComboBox<String>();
-        comboBox.getItems().addAll("Year (Low to High)", "Year (High to Low)", "Title",
-                "IMDB Rating (Low to High)", "IMDB Rating (High to Low)", "Runtime (Low to High)",
-                "Runtime (High to Low)");
+    private ComboBox<String> generateEnclosingFolderComboBox() {
+        return generateFacetComboBox(new TreeSet<>(library.facetIndex.folders()), folderCounts, folder -> {
+            currentFolder = folder;
+            showFiltered();
+        });
+    }
+
+    private ComboBox<SortOrder> generateSortByComboBox() {
+        ComboBox<SortOrder> comboBox = new ComboBox<SortOrder>();
+        comboBox.getItems().addAll(SortOrder.values());
         EventHandler<ActionEvent> event =
             e -> {
-                String selected = comboBox.getValue();
-                if (selected.equals("Year (Low to High)")) {
-                    currentComparator = new yearAscendingComparator();
-                }
-                else if(selected.equals("Year (High to Low)")) {
-                    currentComparator = new yearDescendingComparator();
-                }
-                else if(selected.equals("Title")){
-                    currentComparator = new titleComparator();
-                }
-                else if(selected.equals("IMDB Rating (Low to High)")){
-                    currentComparator = new imdbRatingAscendingComparator();
-                }
-                else if(selected.equals("IMDB Rating (High to Low)")){
-                    currentComparator = new imdbRatingDescendingComparator();
-                }
-                else if(selected.equals("Runtime (Low to High)")) {
-                    currentComparator = new runtimeAscendingComparator();
-                }
-                else {
-                    currentComparator = new runtimeDescendingComparator();
-                }
-                setInvisible(inCurrentFolder);
-                List<MovieInfo> toShow = filterGenre(inCurrentFolder, currentGenre);
-                setVisible(toShow);
+                currentSortOrder = comboBox.getValue();
+                showFiltered();
             };
 
         comboBox.setOnAction(event);
-        comboBox.getSelectionModel().selectFirst();;
+        comboBox.getSelectionModel().selectFirst();
         return comboBox;
     }
 
 
-    private ComboBox<String> generateGenreComboBox(Set<String> allGenres) {
-        ComboBox<String> comboBox = new ComboBox<String>();
-        comboBox.getItems().add("All");
-        List<String> sortedGenres = new ArrayList<>(allGenres);
-        Collections.sort(sortedGenres);
-        comboBox.getItems().addAll(sortedGenres);
-
-        EventHandler<ActionEvent> event = e -> {
-            currentGenre = comboBox.getValue();
-            if(currentGenre.equals("All")) {
-                setVisible(inCurrentFolder);
-            }
-            else {
-                setInvisible(inCurrentFolder);
-                List<MovieInfo> toShow = filterGenre(inCurrentFolder, currentGenre);
-                setVisible(toShow);
-            }
-        };
-
-        comboBox.setOnAction(event);
-        comboBox.getSelectionModel().selectFirst();
-        return comboBox;
+    private ComboBox<String> generateGenreComboBox() {
+        return generateFacetComboBox(library.facetIndex.genres(), genreCounts, genre -> {
+            currentGenre = genre;
+            showFiltered();
+        });
     }
 
     private Button generateRandomButton() {
@@ -240,62 +200,140 @@ class NodeManager {
         return button;
     }
 
+    private Button generateBackToLibraryButton() {
+        Button button = new Button("Back to Library");
+        button.setOnAction(event -> showFiltered());
+        button.setVisible(false);
+        button.setManaged(false);
+        return button;
+    }
+
     private Button generateDeselectAllButton() {
         Button button = new Button("Deselect All");
         button.setOnAction(event -> {
-            for(MovieInfo movieInfo : randomPool) {
-                movieInfo.view.getStyleClass().remove("glowing");
-            }
             randomPool.clear();
+            posterGrid.refresh();
         });
         return button;
     }
 
-    ImageView generatePoster(MovieInfo movieInfo) {
-        Image image = null;
-        if(movieInfo.posterURL.equals("N/A")) {
-            image = new Image("file:.style/filenotfound.png");
+    // Movies arrive while the grid is already up, a batch per pulse
+    void addMovies(List<MovieInfo> movieInfos) {
+        for (MovieInfo movieInfo : movieInfos) {
+            attachMovie(movieInfo, movieInfo.folder());
+        }
+        showResults();
+    }
+
+    private void attachMovie(MovieInfo movieInfo, String folder) {
+        moviesByPath.put(movieInfo.absolutePath, movieInfo);
+        queries.add(movieInfo, folder);
+        addFacet(folderComboBox, folder);
+        for (String genre : movieInfo.genres()) {
+            addFacet(genreComboBox, genre);
+        }
+    }
+
+    // Entries after "All" stay sorted, whatever order the movies arrive in
+    private void addFacet(ComboBox<String> comboBox, String name) {
+        ObservableList<String> items = comboBox.getItems();
+        int position = Collections.binarySearch(items.subList(1, items.size()), name);
+        if (position < 0) {
+            items.add(-position, name);
+        }
+    }
+
+    MovieInfo removeMovie(String absolutePath) {
+        MovieInfo removed = detachMovie(absolutePath);
+        if (removed != null) {
+            showResults();
+        }
+        return removed;
+    }
+
+    // Swaps in refreshed metadata for movies that are already shown, keeping them selected if they were
+    void replaceMovies(List<MovieInfo> movieInfos) {
+        for (MovieInfo movieInfo : movieInfos) {
+            boolean selected = randomPool.stream().anyMatch(m -> m.absolutePath.equals(movieInfo.absolutePath));
+            boolean shownSimilar = similarTo != null && similarTo.absolutePath.equals(movieInfo.absolutePath);
+            if (detachMovie(movieInfo.absolutePath) == null) { // Removed while the refresh was running
+                continue;
+            }
+            if (selected) {
+                randomPool.add(movieInfo);
+            }
+            if (shownSimilar) {
+                setSimilarTo(movieInfo);
+            }
+            attachMovie(movieInfo, movieInfo.folder());
         }
-        else {
-            image = new Image(movieInfo.posterURL);
-            if(image.getWidth() == 0) { // URL is bad
-                image = new Image("file:.style/filenotfound.png");
+        showResults();
+    }
+
+    private MovieInfo detachMovie(String absolutePath) {
+        MovieInfo removed = moviesByPath.remove(absolutePath);
+        if (removed != null) {
+            queries.remove(removed);
+            randomPool.remove(removed);
+            if (removed == similarTo) {
+                setSimilarTo(null);
             }
         }
+        return removed;
+    }
+
+    void setOnFirstPoster(Runnable r) {
+        posterLoader.setOnFirstPoster(r);
+    }
+
+    void showProgress(int done, int total) {
+        progressLabel.setText("Loading " + done + " of " + total);
+    }
+
+    void hideProgress() {
+        progressLabel.setVisible(false);
+        progressLabel.setManaged(false);
+    }
+
+    ImageView generatePoster() {
         ImageView poster = new ImageView();
-        poster.setImage(image);
         poster.setFitWidth(POSTER_WIDTH);
         poster.setPreserveRatio(true);
         poster.setSmooth(true);
-        poster.setCache(true);
 
         return poster;
     }
 
-    void makeWrapperClickable(VBox imageView, MovieInfo movieInfo) {
-        imageView.setOnMouseClicked((MouseEvent e) -> {
-            if(e.getClickCount() == 2 && e.getButton() == MouseButton.PRIMARY) {
-                fileManager.playMovie(movieInfo.absolutePath, movieInfo.subtitleAbsolutePath);
-            }
-            else {
-                if (!randomPool.contains(movieInfo)) {
-                    randomPool.add(movieInfo);
-                    movieInfo.view.getStyleClass().add("glowing");
-                } else {
-                    randomPool.remove(movieInfo);
-                    movieInfo.view.getStyleClass().remove("glowing");
-                }
-            }
-        });
+    void playMovie(MovieInfo movieInfo) {
+        fileManager.playMovie(movieInfo.absolutePath, movieInfo.subtitleAbsolutePath);
     }
 
-    Label generatePosterLabel(String title, String year) {
-        Label label = new Label(title + " (" + year + ")");
+    void queueMovie(MovieInfo movieInfo) {
+        fileManager.queueMovie(movieInfo.absolutePath, movieInfo.subtitleAbsolutePath);
+    }
+
+    boolean isSelected(MovieInfo movieInfo) {
+        return randomPool.contains(movieInfo);
+    }
+
+    void toggleSelected(MovieInfo movieInfo) {
+        if (!randomPool.remove(movieInfo)) {
+            randomPool.add(movieInfo);
+        }
+    }
+
+    Label generatePosterLabel() {
+        Label label = new Label();
         label.setWrapText(true);
         label.setTextAlignment(TextAlignment.CENTER);
         return label;
     }
 
+    ListView<Integer> generatePosterGrid() {
+        posterGrid = new PosterGrid(this, posterLoader);
+        return posterGrid.getNode();
+    }
+
     private Button generateLocateVLCButton() {
         Button button = new Button("Set VLC Location");
         button.setOnAction(event -> {
@@ -309,55 +347,42 @@ class NodeManager {
         return button;
     }
 
+    // Results update on every keystroke, answered from the library's search index
     private TextField generateSearchBar() {
         TextField textBox = new TextField();
         textBox.setPromptText("Search");
-        textBox.setOnKeyReleased(e -> {
-            KeyCode keycode = e.getCode();
-            if (keycode == KeyCode.ENTER){
-                String query = textBox.getText().trim().toLowerCase();
-                List<MovieInfo> candidates = filterGenre(inCurrentFolder, currentGenre);
-                if(query.isEmpty()) {
-                    setVisible(candidates);
-                }
-                else {
-                    setInvisible(inCurrentFolder);
-                    Set<String> searchTerms = new HashSet<>(Arrays.asList((query.split(" "))));
-                    List<MovieInfo> results = new ArrayList<>();
-
-                    for(MovieInfo movieInfo : candidates) {
-                        if(movieInfo.tags.containsAll(searchTerms)) {
-                            results.add(movieInfo);
-                        }
-                    }
-                    setVisible(results);
-                }
-            }
-            else if(keycode == KeyCode.BACK_SPACE || keycode == KeyCode.DELETE) {
-                if(textBox.getText().trim().isEmpty()) {
-                    setVisible(filterGenre(inCurrentFolder, currentGenre));
-                }
-            }
+        textBox.textProperty().addListener((observable, oldText, newText) -> {
+            currentQuery = newText.trim();
+            showFiltered();
         });
 
         return textBox;
     }
 
-    ToolBar generateToolBar(Multimap<String, MovieInfo> folderMap, ArrayList<MovieInfo> movieInfos,
-                            Set<String> allGenres) {
+    // The library belongs to the query thread from here on; its facets are read here before any change is queued
+    ToolBar generateToolBar(Library library) {
+        this.library = library;
+        queries = new LibraryQueries(library);
+        folderComboBox = generateEnclosingFolderComboBox();
+        genreComboBox = generateGenreComboBox();
+
         ToolBar toolBar = new ToolBar();
         toolBar.getStyleClass().add("control-bar");
         ObservableList<Node> toolBarItems = toolBar.getItems();
         toolBarItems.add(new Label("Enclosing Folder:"));
-        toolBarItems.add(generateEnclosingFolderComboBox(folderMap, movieInfos));
+        toolBarItems.add(folderComboBox);
         toolBarItems.add(new Label("Sort By:"));
         toolBarItems.add(generateSortByComboBox());
         toolBarItems.add(new Label("Genre:"));
-        toolBarItems.add(generateGenreComboBox(allGenres));
+        toolBarItems.add(genreComboBox);
 
         toolBarItems.add(generateRandomButton());
         toolBarItems.add(generateDeselectAllButton());
         toolBarItems.add(generateSearchBar());
+        backToLibraryButton = generateBackToLibraryButton();
+        toolBarItems.add(backToLibraryButton);
+        progressLabel = new Label("Scanning library...");
+        toolBarItems.add(progressLabel);
 
         HBox spacer = new HBox();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -0,0 +1,171 @@
+package main;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// One client shared by all lookups, so connections are kept alive and reused (HTTP/2 where the server offers it).
+// Every request has a timeout, transient failures are retried with exponential backoff, and a token bucket keeps
+// the request rate under the API quota.
+class OmdbClient {
+    static final double DEFAULT_REQUESTS_PER_SECOND = 5;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 8000;
+
+    // A final answer from OMDb, found or not; only these may be cached
+    static class Answer {
+        final byte[] body;
+        final OmdbResponse response;
+
+        Answer(byte[] body, OmdbResponse response) {
+            this.body = body;
+            this.response = response;
+        }
+    }
+
+    private final String apiURL;
+    private HttpClient client;
+    private final RateLimiter rateLimiter;
+    private final Duration requestTimeout;
+    private volatile String quotaError;
+
+    OmdbClient(String apiURL) {
+        this(apiURL, Double.parseDouble(System.getProperty("movieBrowser.apiRate",
+                Double.toString(DEFAULT_REQUESTS_PER_SECOND))));
+    }
+
+    OmdbClient(String apiURL, double requestsPerSecond) {
+        this(apiURL, requestsPerSecond, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    OmdbClient(String apiURL, double requestsPerSecond, Duration requestTimeout) {
+        this.apiURL = apiURL;
+        rateLimiter = RateLimiter.create(requestsPerSecond);
+        this.requestTimeout = requestTimeout;
+    }
+
+    // Built on first use: setting up TLS costs about half a second, which a start served from cache never needs
+    private synchronized HttpClient client() {
+        if (client == null) {
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(CONNECT_TIMEOUT)
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+        }
+        return client;
+    }
+
+    // Throws if no final answer could be had, e.g. the server kept failing or the quota is used up
+    Answer lookup(String title, String year) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(String.format(apiURL,
+                URLEncoder.encode(title, StandardCharsets.UTF_8), URLEncoder.encode(year, StandardCharsets.UTF_8))))
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                sleep(backoff(attempt));
+            }
+            checkQuota();
+            rateLimiter.acquire();
+            PerfEvents.OmdbRequest event = new PerfEvents.OmdbRequest();
+            event.begin();
+            event.title = title;
+            event.attempt = attempt + 1;
+            long start = System.nanoTime();
+            Metrics.INSTANCE.apiRequests.increment();
+            HttpResponse<byte[]> response;
+            try {
+                response = client().send(request, HttpResponse.BodyHandlers.ofByteArray());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted looking up " + title);
+            } catch (IOException e) { // Connect or read timeout, reset connection, ...
+                Metrics.INSTANCE.apiFailures.increment();
+                Metrics.INSTANCE.apiLatency.recordSince(start);
+                event.commit();
+                lastFailure = e;
+                continue;
+            }
+            Metrics.INSTANCE.apiLatency.recordSince(start);
+
+            int status = response.statusCode();
+            event.status = status;
+            event.commit();
+            if (status != 200) {
+                Metrics.INSTANCE.apiFailures.increment();
+            }
+            if (status == 429 || status >= 500) {
+                lastFailure = new IOException("OMDb returned " + status + " for " + title);
+                continue;
+            }
+            OmdbResponse omdbResponse = parse(response.body());
+            if (status == 401 || (omdbResponse != null && isQuotaError(omdbResponse.error))) {
+                // "Request limit reached!" or a bad key; nothing else will succeed this session either
+                quotaError = omdbResponse != null && omdbResponse.error != null ? omdbResponse.error
+                        : "OMDb returned 401";
+                checkQuota();
+            }
+            if (status != 200) {
+                throw new IOException("OMDb returned " + status + " for " + title);
+            }
+            if (omdbResponse == null) { // Cut off, or an error page from a proxy
+                lastFailure = new IOException("Unreadable OMDb response for " + title);
+                continue;
+            }
+            return new Answer(response.body(), omdbResponse);
+        }
+        throw lastFailure;
+    }
+
+    private void checkQuota() throws IOException {
+        String error = quotaError;
+        if (error != null) {
+            throw new IOException("OMDb lookups stopped: " + error);
+        }
+    }
+
+    private static boolean isQuotaError(String error) {
+        return error != null && (error.contains("limit") || error.contains("API key"));
+    }
+
+    private static OmdbResponse parse(byte[] body) {
+        try {
+            return OmdbResponse.parse(new ByteArrayInputStream(body));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Exponential with jitter so that parallel lookups do not retry in lockstep
+    private static long backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (attempt - 1));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package main;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// The fields the browser uses from an OMDb response, pulled straight off the byte stream. Everything else (Ratings,
+// Actors, ...) is skipped without being decoded, and no document tree is built.
+class OmdbResponse {
+    String title, year, genre, plot, poster, imdbRating, director, runtime;
+    String error;
+
+    // Keys of the fields above, in the order store() assigns them
+    private static final byte[][] FIELDS = keys("Title", "Year", "Genre", "Plot", "Poster", "imdbRating",
+            "Director", "Runtime", "Error");
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[4096];
+    private int position, limit;
+    // Decoded bytes of the last string read
+    private byte[] text = new byte[256];
+    private int textLength;
+
+    private OmdbResponse(InputStream in) {
+        this.in = in;
+    }
+
+    static OmdbResponse parse(InputStream in) throws IOException {
+        OmdbResponse response = new OmdbResponse(in);
+        response.readObject();
+        return response;
+    }
+
+    boolean isError() {
+        return error != null;
+    }
+
+    // "142 min" -> 142; "N/A", missing or garbled -> 0
+    int runtimeMinutes() {
+        if (runtime == null) {
+            return 0;
+        }
+        int minutes = 0;
+        for (int i = 0; i < runtime.length() && i < 6; i++) {
+            char c = runtime.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            minutes = minutes * 10 + (c - '0');
+        }
+        return minutes;
+    }
+
+    MovieInfo toMovieInfo(String title, String year, String absolutePath, String subtitleAbsolutePath) {
+        if (isError()) {
+            return new MovieInfo(title, year, "", "", PosterLoader.NOT_FOUND_URL,
+                    absolutePath, subtitleAbsolutePath, "", "", 0);
+        }
+        return new MovieInfo(title, year, orEmpty(genre), orEmpty(plot), orEmpty(poster), absolutePath,
+                subtitleAbsolutePath, orEmpty(imdbRating), orEmpty(director), runtimeMinutes());
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private void readObject() throws IOException {
+        expect('{');
+        if (peek() == '}') {
+            position++;
+            return;
+        }
+        while (true) {
+            expect('"');
+            readText();
+            int field = field();
+            expect(':');
+            if (field >= 0 && peek() == '"') {
+                position++;
+                readText();
+                store(field, new String(text, 0, textLength, StandardCharsets.UTF_8));
+            } else {
+                skipValue();
+            }
+            int c = next();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw malformed(c);
+            }
+        }
+    }
+
+    private int field() {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (Arrays.equals(FIELDS[i], 0, FIELDS[i].length, text, 0, textLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void store(int field, String value) {
+        switch (field) {
+            case 0: title = value; break;
+            case 1: year = value; break;
+            case 2: genre = value; break;
+            case 3: plot = value; break;
+            case 4: poster = value; break;
+            case 5: imdbRating = value; break;
+            case 6: director = value; break;
+            case 7: runtime = value; break;
+            default: error = value;
+        }
+    }
+
+    // Reads the rest of a string whose opening quote was consumed into text, undoing escapes
+    private void readText() throws IOException {
+        textLength = 0;
+        while (true) {
+            if (position == limit) {
+                fill();
+            }
+            // Copy the run up to the next quote or escape in one go
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            append(buffer, start, position - start);
+            if (position == limit) {
+                continue;
+            }
+            if (buffer[position++] == '"') {
+                return;
+            }
+            int c = readByte();
+            switch (c) {
+                case 'b': appendByte('\b'); break;
+                case 'f': appendByte('\f'); break;
+                case 'n': appendByte('\n'); break;
+                case 'r': appendByte('\r'); break;
+                case 't': appendByte('\t'); break;
+                case 'u': appendCodePoint(readEscapedCodePoint()); break;
+                default: appendByte(c); // \" \\ \/
+            }
+        }
+    }
+
+    private int readEscapedCodePoint() throws IOException {
+        char c = readHex();
+        if (Character.isHighSurrogate(c)) {
+            if (readByte() != '\\' || readByte() != 'u') {
+                throw new IOException("Unpaired surrogate in OMDb response");
+            }
+            return Character.toCodePoint(c, readHex());
+        }
+        return c;
+    }
+
+    private char readHex() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(readByte(), 16);
+            if (digit < 0) {
+                throw new IOException("Bad \\u escape in OMDb response");
+            }
+            value = value << 4 | digit;
+        }
+        return (char) value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        byte[] bytes = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+        append(bytes, 0, bytes.length);
+    }
+
+    private void appendByte(int b) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, textLength * 2);
+        }
+        text[textLength++] = (byte) b;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+        System.arraycopy(bytes, offset, text, textLength, length);
+        textLength += length;
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = readByte();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readByte();
+            }
+        }
+    }
+
+    // Skips a string, number, literal, array or object without decoding it
+    private void skipValue() throws IOException {
+        int c = next();
+        if (c == '"') {
+            skipString();
+            return;
+        }
+        if (c != '{' && c != '[') {
+            while ((c = peek()) != ',' && c != '}' && c != ']') {
+                position++;
+            }
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            c = readByte();
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = next();
+        if (c != expected) {
+            throw malformed(c);
+        }
+    }
+
+    // Consumes and returns the next byte that is not whitespace
+    private int next() throws IOException {
+        int c = peek();
+        position++;
+        return c;
+    }
+
+    // Returns the next byte that is not whitespace without consuming it
+    private int peek() throws IOException {
+        while (true) {
+            if (position == limit) {
+                fill();
+            }
+            int c = buffer[position];
+            if (!isWhitespace(c)) {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++];
+    }
+
+    private void fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            throw new EOFException("Truncated OMDb response");
+        }
+        position = 0;
+        limit = read;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static byte[][] keys(String... names) {
+        byte[][] keys = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return keys;
+    }
+
+    private static IOException malformed(int c) {
+        return new IOException("Malformed OMDb response near '" + (char) c + "'");
+    }
+}
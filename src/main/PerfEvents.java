@@ -0,0 +1,128 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Flight recorder events for the spots Metrics times, so a recording shows where a start went, e.g.
+//   java -XX:StartFlightRecording=filename=start.jfr ... main.Main
+// then "jfr print --events 'moviebrowser.*' start.jfr". An event costs next to nothing while no recording runs.
+class PerfEvents {
+    private static final String CATEGORY = "Movie Browser";
+
+    private PerfEvents() {
+    }
+
+    @Name("moviebrowser.LibraryScan")
+    @Label("Library Scan")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class LibraryScan extends Event {
+        @Label("Movie Files")
+        int movieFiles;
+
+        @Label("Directories")
+        int directories;
+
+        @Label("Changed Directories")
+        int changedDirectories;
+
+        @Label("Unavailable Roots")
+        int unavailableRoots;
+    }
+
+    @Name("moviebrowser.MetadataLookup")
+    @Label("Metadata Lookup")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class MetadataLookup extends Event {
+        @Label("Cache Key")
+        String cacheKey;
+
+        // "cache", "omdb" or "failed"
+        @Label("Source")
+        String source;
+    }
+
+    @Name("moviebrowser.OmdbRequest")
+    @Label("OMDb Request")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class OmdbRequest extends Event {
+        @Label("Title")
+        String title;
+
+        @Label("Attempt")
+        int attempt;
+
+        // 0 if no response came back
+        @Label("Status")
+        int status;
+    }
+
+    @Name("moviebrowser.PosterFetch")
+    @Label("Poster Fetch")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class PosterFetch extends Event {
+        @Label("URL")
+        String url;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("moviebrowser.PosterDecode")
+    @Label("Poster Decode")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class PosterDecode extends Event {
+        @Label("URL")
+        String url;
+    }
+
+    @Name("moviebrowser.GridQuery")
+    @Label("Grid Query")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class GridQuery extends Event {
+        @Label("Query")
+        String query;
+
+        @Label("Folder")
+        String folder;
+
+        @Label("Genre")
+        String genre;
+
+        @Label("Sort Order")
+        String sortOrder;
+
+        @Label("Results")
+        int results;
+
+        @Label("Sort Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long sortNanos;
+
+        // Superseded by a newer query before it finished
+        @Label("Cancelled")
+        boolean cancelled;
+    }
+
+    @Name("moviebrowser.StartupMilestone")
+    @Label("Startup Milestone")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class StartupMilestone extends Event {
+        @Label("Milestone")
+        String milestone;
+
+        @Label("Since Start")
+        @Timespan(Timespan.MILLISECONDS)
+        long sinceStartMillis;
+    }
+}
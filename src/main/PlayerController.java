@@ -0,0 +1,213 @@
+package main;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Keeps one player running with VLC's remote control (RC) interface on a local socket and plays movies by sending it
+// "add" and "enqueue" commands, instead of starting a player per movie. A player that has exited or closed its
+// control connection is started again on the next command. The player is whatever launchCommand names, so a fake that speaks the same
+// line protocol can stand in for VLC.
+class PlayerController {
+    static final String HOST = "127.0.0.1";
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long STARTUP_TIMEOUT_MILLIS = 10000;
+    private static final long RETRY_INTERVAL_MILLIS = 100;
+    // close() runs on the FX thread, so it waits no longer than this in all before killing the player
+    private static final long CLOSE_TIMEOUT_MILLIS = 300;
+
+    // Builds the command line that starts the player listening on port
+    interface LaunchCommand {
+        List<String> build(int port);
+    }
+
+    private final LaunchCommand launchCommand;
+    private final int configuredPort;
+    // Commands are sent in order on one thread, so the FX thread never waits for a player to start
+    private final ExecutorService executor;
+    private Process player;
+    private Socket socket;
+    private Writer out;
+    private InputStream in;
+    private final byte[] drain = new byte[4096];
+
+    PlayerController(LaunchCommand launchCommand) {
+        this(launchCommand, Integer.getInteger("movieBrowser.playerPort", 0));
+    }
+
+    // port 0 picks a free one each time the player is started
+    PlayerController(LaunchCommand launchCommand, int port) {
+        this.launchCommand = launchCommand;
+        configuredPort = port;
+        executor = Executors.newSingleThreadExecutor(MetadataResolver.daemonThreadFactory("player-control"));
+    }
+
+    static LaunchCommand vlc(String vlcLocation) {
+        return port -> {
+            List<String> command = new ArrayList<>();
+            command.add(vlcLocation);
+            command.add("--extraintf=rc");
+            command.add("--rc-host=" + HOST + ":" + port);
+            if (System.getProperty("os.name", "").startsWith("Windows")) {
+                command.add("--rc-quiet"); // No console window; the option only exists in Windows builds
+            }
+            return command;
+        };
+    }
+
+    // Replaces the playlist with the movie and starts playing it
+    void play(String absolutePath, String subtitleAbsolutePath) {
+        send("add", absolutePath, subtitleAbsolutePath);
+    }
+
+    // Plays the movie after the ones already queued
+    void enqueue(String absolutePath, String subtitleAbsolutePath) {
+        send("enqueue", absolutePath, subtitleAbsolutePath);
+    }
+
+    private void send(String verb, String absolutePath, String subtitleAbsolutePath) {
+        StringBuilder command = new StringBuilder(verb).append(' ')
+                .append(quote(new File(absolutePath).toPath().toUri().toASCIIString()));
+        if (subtitleAbsolutePath != null) {
+            command.append(' ').append(quote(":sub-file=" + subtitleAbsolutePath));
+        }
+        String line = command.toString();
+        executor.execute(() -> deliver(line));
+    }
+
+    // Stops the player and drops whatever commands have not been sent yet. The controller can't be used afterwards.
+    void close() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        executor.shutdownNow(); // Interrupts a wait for the player to start
+        try {
+            executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Process stopped;
+        synchronized (this) {
+            stopped = player;
+            disconnect();
+        }
+        if (stopped == null) {
+            return;
+        }
+        try { // So the player is gone by the time the app is
+            if (!stopped.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                stopped.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            stopped.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void deliver(String line) {
+        try {
+            sendLine(line);
+        } catch (IOException e) { // The player died or hung up since the last command; start a new one
+            disconnect();
+            try {
+                sendLine(line);
+            } catch (IOException retryFailure) {
+                retryFailure.printStackTrace();
+                disconnect();
+            }
+        }
+    }
+
+    private void sendLine(String line) throws IOException {
+        if (player == null || !player.isAlive() || socket == null || !connectionOpen()) {
+            disconnect();
+            connect();
+        }
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+
+    // A write to a connection the player already closed can still succeed, so look for end of stream first. This
+    // also drains the status lines the player answers every command with, which nobody reads.
+    private boolean connectionOpen() throws IOException {
+        socket.setSoTimeout(1);
+        try {
+            while (true) {
+                if (in.read(drain) < 0) {
+                    return false;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            return true;
+        }
+    }
+
+    // Starts the player and waits for its control socket to accept
+    private void connect() throws IOException {
+        int port = configuredPort != 0 ? configuredPort : freePort();
+        ProcessBuilder pb = new ProcessBuilder(launchCommand.build(port));
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        player = pb.start();
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            Socket s = new Socket();
+            try {
+                s.connect(new InetSocketAddress(HOST, port), CONNECT_TIMEOUT_MILLIS);
+                socket = s;
+                out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                in = s.getInputStream();
+                return;
+            } catch (IOException e) {
+                s.close();
+                if (!player.isAlive() || System.currentTimeMillis() > deadline) {
+                    player.destroy();
+                    player = null;
+                    throw new IOException("Player did not open its control port " + port, e);
+                }
+            }
+            try {
+                Thread.sleep(RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the player");
+            }
+        }
+    }
+
+    // Drops the connection; a player that still runs without it could no longer be controlled, so it is stopped too
+    private synchronized void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            socket = null;
+        }
+        if (player != null && player.isAlive()) {
+            player.destroy();
+        }
+        player = null;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0, 1, InetAddress.getByName(HOST))) {
+            return s.getLocalPort();
+        }
+    }
+
+    // RC splits arguments on spaces unless they are quoted
+    private static String quote(String argument) {
+        return '"' + argument.replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,203 @@
+package main;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Virtualized poster grid. Each ListView item is a row of movies; the ListView only creates cells for the rows on
+// screen (plus a small buffer) and rebinds them while scrolling, so node count does not grow with the library.
+class PosterGrid {
+    private static final int GAP = 10;
+    private static final int PADDING = 15;
+    private static final int SCROLLBAR_WIDTH = 20;
+
+    private final NodeManager nodeManager;
+    private final PosterLoader posterLoader;
+    private final ListView<Integer> rows;
+    private final ObservableList<Integer> rowIndices;
+    private List<MovieInfo> movies;
+    private int columns;
+
+    PosterGrid(NodeManager n, PosterLoader p) {
+        nodeManager = n;
+        posterLoader = p;
+        movies = Collections.emptyList();
+        columns = 1;
+        rowIndices = FXCollections.observableArrayList();
+        rows = new ListView<>(rowIndices);
+        rows.getStyleClass().add("poster-grid");
+        rows.setFocusTraversable(false);
+        rows.setCellFactory(listView -> new RowCell());
+        rows.widthProperty().addListener((observable, oldWidth, newWidth) -> {
+            int fitting = Math.max(1, (newWidth.intValue() - 2 * PADDING - SCROLLBAR_WIDTH + GAP)
+                    / (NodeManager.POSTER_WIDTH + GAP));
+            if (fitting != columns) {
+                columns = fitting;
+                updateRows();
+            }
+        });
+    }
+
+    ListView<Integer> getNode() {
+        return rows;
+    }
+
+    void setMovies(List<MovieInfo> movieInfos) {
+        movies = movieInfos;
+        updateRows();
+    }
+
+    // Rebinds the visible cells, e.g. after the selection changed
+    void refresh() {
+        rows.refresh();
+    }
+
+    private void updateRows() {
+        int rowCount = (movies.size() + columns - 1) / columns;
+        List<Integer> indices = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            indices.add(i);
+        }
+        rowIndices.setAll(indices);
+        rows.refresh();
+    }
+
+    private class RowCell extends ListCell<Integer> {
+        private final HBox row;
+
+        RowCell() {
+            row = new HBox(GAP);
+            row.setPadding(new Insets(GAP / 2, PADDING, GAP / 2, PADDING));
+            getStyleClass().add("poster-row");
+        }
+
+        @Override
+        protected void updateItem(Integer rowIndex, boolean empty) {
+            super.updateItem(rowIndex, empty);
+            if (empty || rowIndex == null) {
+                setGraphic(null);
+                return;
+            }
+            while (row.getChildren().size() < columns) {
+                row.getChildren().add(new PosterCell());
+            }
+            if (row.getChildren().size() > columns) {
+                row.getChildren().remove(columns, row.getChildren().size());
+            }
+            for (int column = 0; column < columns; column++) {
+                int index = rowIndex * columns + column;
+                PosterCell cell = (PosterCell) row.getChildren().get(column);
+                cell.bind(index < movies.size() ? movies.get(index) : null);
+            }
+            setGraphic(row);
+        }
+    }
+
+    private class PosterCell extends VBox {
+        private final ImageView poster;
+        private final Label label;
+        private final Tooltip plotSummary;
+        private final ContextMenu menu;
+        private final MenuItem moreLikeThis;
+        private MovieInfo movieInfo;
+
+        PosterCell() {
+            setPrefWidth(NodeManager.POSTER_WIDTH);
+            setMinWidth(NodeManager.POSTER_WIDTH);
+            getStyleClass().add("wrapper");
+
+            poster = nodeManager.generatePoster();
+            label = nodeManager.generatePosterLabel();
+            plotSummary = new Tooltip();
+            plotSummary.setPrefWidth(500);
+            plotSummary.setShowDelay(Duration.millis(50));
+            plotSummary.setShowDuration(Duration.INDEFINITE);
+            getChildren().addAll(poster, label);
+
+            moreLikeThis = new MenuItem("More Like This");
+            moreLikeThis.setOnAction(e -> {
+                if (movieInfo != null) {
+                    nodeManager.showMoreLike(movieInfo);
+                }
+            });
+            menu = new ContextMenu(moreLikeThis);
+            setOnContextMenuRequested(e -> {
+                if (movieInfo == null) {
+                    return;
+                }
+                moreLikeThis.setDisable(!nodeManager.canShowSimilar()); // Still being built after startup
+                menu.show(this, e.getScreenX(), e.getScreenY());
+                e.consume();
+            });
+
+            setOnMouseClicked((MouseEvent e) -> {
+                if (movieInfo == null) {
+                    return;
+                }
+                if (e.getClickCount() == 2 && e.getButton() == MouseButton.PRIMARY) {
+                    if (e.isShiftDown()) { // Play after whatever is playing now
+                        nodeManager.queueMovie(movieInfo);
+                    } else {
+                        nodeManager.playMovie(movieInfo);
+                    }
+                } else if (e.getButton() == MouseButton.PRIMARY) { // Others open the menu
+                    nodeManager.toggleSelected(movieInfo);
+                    updateGlow();
+                }
+            });
+        }
+
+        void bind(MovieInfo m) {
+            if (m == movieInfo) {
+                updateGlow();
+                return;
+            }
+            movieInfo = m;
+            setVisible(m != null);
+            Tooltip.uninstall(this, plotSummary);
+            if (m == null) {
+                posterLoader.unload(poster);
+                return;
+            }
+            posterLoader.load(m.posterURL, poster);
+            label.setText(m.title + " (" + m.year() + ")");
+            String video = m.width > 0 ? "\nVideo: " + m.width + "x" + m.height
+                    + (m.videoCodec() == null ? "" : " " + m.videoCodec()) : "";
+            if (m.plot.length() > 0) { // In case movie info is not found in database
+                plotSummary.setText(m.plot + "\nIMDB Rating: " + m.imdbRating() +
+                        "\nDirector: " + m.director() + "\nGenres: " + String.join(", ", m.genres())
+                        + "\nRuntime: " + m.runtime + " min" + video);
+                Tooltip.install(this, plotSummary);
+            } else if (m.runtime > 0) { // Only what the file itself told
+                plotSummary.setText("Runtime: " + m.runtime + " min" + video);
+                Tooltip.install(this, plotSummary);
+            }
+            updateGlow();
+        }
+
+        private void updateGlow() {
+            boolean selected = movieInfo != null && nodeManager.isSelected(movieInfo);
+            if (selected && !getStyleClass().contains("glowing")) {
+                getStyleClass().add("glowing");
+            } else if (!selected) {
+                getStyleClass().remove("glowing");
+            }
+        }
+    }
+}
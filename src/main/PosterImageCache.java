@@ -0,0 +1,87 @@
+package main;
+
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Decoded posters by URL, least recently shown first, within a budget of decoded pixel bytes. A poster counts as in
+// use while a view shows it and is never evicted then; once no view does, e.g. because it scrolled off screen or was
+// filtered out, it is evicted as soon as the cache is over budget. FX thread only.
+class PosterImageCache {
+    static final long DEFAULT_BUDGET_MB = 64;
+
+    private static class Entry {
+        final Image image;
+        final long bytes;
+        int views;
+
+        Entry(Image i, long b) {
+            this.image = i;
+            this.bytes = b;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long budgetBytes;
+    private long bytes;
+
+    PosterImageCache() {
+        this(Long.getLong("movieBrowser.posterCacheMB", DEFAULT_BUDGET_MB) << 20);
+    }
+
+    PosterImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // JavaFX keeps decoded images as 32-bit pixels
+    static long bytes(Image image) {
+        return 4L * (long) image.getWidth() * (long) image.getHeight();
+    }
+
+    // The cached image, now counted as shown by one more view, or null
+    Image acquire(String url) {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+        entry.views++;
+        return entry.image;
+    }
+
+    // Returns the cached image, which is an earlier one if the URL was decoded twice. For images shared by many URLs,
+    // such as the not-found poster, pass 0 bytes.
+    Image put(String url, Image image, long imageBytes, boolean shown) {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            entry = new Entry(image, imageBytes);
+            entries.put(url, entry);
+            bytes += imageBytes;
+        }
+        if (shown) {
+            entry.views++;
+        }
+        trim();
+        return entry.image;
+    }
+
+    // A view stopped showing the image
+    void release(String url) {
+        Entry entry = entries.get(url);
+        if (entry != null && entry.views > 0) {
+            entry.views--;
+            trim();
+        }
+    }
+
+    private void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > budgetBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.views == 0) {
+                iterator.remove();
+                bytes -= entry.bytes;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package main;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Shows a placeholder right away and swaps in the poster once its thumbnail has been fetched and decoded off the
+// FX thread. Decoded posters are kept within a memory budget, see PosterImageCache, so scrolling back does not decode
+// them again. The placeholder and the not-found poster are one shared image each, whatever the number of movies.
+class PosterLoader {
+    static final String NOT_FOUND_URL = "file:.style/filenotfound.png";
+    static final int POSTER_HEIGHT = NodeManager.POSTER_WIDTH * 3 / 2;
+    // ImageView property holding the URL whose cached image the view shows, if any
+    private static final String SHOWN_URL = "posterLoader.shownURL";
+    // ImageView property identifying the view's latest load; only that one may show its result
+    private static final String LOAD = "posterLoader.load";
+
+    private final ThumbnailCache thumbnailCache;
+    private final Executor executor;
+    private final Executor fxThread;
+    private final Function<String, Image> decoder;
+    private final Image placeholder;
+    private final Image notFound;
+    private final PosterImageCache decodedImages;
+    private Runnable onFirstPoster;
+
+    PosterLoader(ThumbnailCache t) {
+        thumbnailCache = t;
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Integer.getInteger("movieBrowser.posterThreads", 4), r -> {
+            Thread thread = new Thread(r, "poster-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        fxThread = Platform::runLater;
+        decoder = this::decode;
+        placeholder = new WritableImage(NodeManager.POSTER_WIDTH, POSTER_HEIGHT);
+        notFound = new Image(NOT_FOUND_URL, NodeManager.POSTER_WIDTH, 0, true, true);
+        decodedImages = new PosterImageCache();
+    }
+
+    // Decodes with decoder on executor and applies results through fxThread, so tests can run both by hand
+    PosterLoader(Function<String, Image> decoder, Image notFound, PosterImageCache decodedImages, Executor executor,
+                 Executor fxThread) {
+        thumbnailCache = null;
+        this.executor = executor;
+        this.fxThread = fxThread;
+        this.decoder = decoder;
+        placeholder = new WritableImage(NodeManager.POSTER_WIDTH, POSTER_HEIGHT);
+        this.notFound = notFound;
+        this.decodedImages = decodedImages;
+    }
+
+    // Runs once, the first time a real poster (not the placeholder or the not-found image) reaches the screen
+    void setOnFirstPoster(Runnable r) {
+        onFirstPoster = r;
+    }
+
+    // Views are recycled by the grid, so a result is only applied if it is for the view's latest load. Comparing
+    // URLs is not enough: a view asked for A, then B, then A again has two loads of A in flight.
+    void load(String posterURL, ImageView view) {
+        unload(view);
+        view.setUserData(posterURL);
+        if (posterURL.equals("N/A") || posterURL.equals(NOT_FOUND_URL)) {
+            view.setImage(notFound);
+            return;
+        }
+        Image decoded = decodedImages.acquire(posterURL);
+        if (decoded != null) {
+            show(view, posterURL, decoded);
+            return;
+        }
+        view.setImage(placeholder);
+        Object load = new Object();
+        view.getProperties().put(LOAD, load);
+        executor.execute(() -> {
+            Image decodedImage = decoder.apply(posterURL);
+            fxThread.execute(() -> {
+                boolean wanted = view.getProperties().get(LOAD) == load;
+                Image image = decodedImages.put(posterURL, decodedImage,
+                        decodedImage == notFound ? 0 : PosterImageCache.bytes(decodedImage), wanted);
+                if (wanted) {
+                    view.getProperties().remove(LOAD);
+                    show(view, posterURL, image);
+                    if (onFirstPoster != null && image != notFound) {
+                        onFirstPoster.run();
+                        onFirstPoster = null;
+                    }
+                }
+            });
+        });
+    }
+
+    // Empties the view, e.g. a grid cell with no movie, letting its poster be evicted
+    void unload(ImageView view) {
+        Object shownURL = view.getProperties().remove(SHOWN_URL);
+        if (shownURL != null) {
+            decodedImages.release((String) shownURL);
+        }
+        view.getProperties().remove(LOAD);
+        view.setUserData(null);
+        view.setImage(null);
+    }
+
+    // The image must have been acquired for the view
+    private void show(ImageView view, String posterURL, Image image) {
+        view.getProperties().put(SHOWN_URL, posterURL);
+        view.setImage(image);
+    }
+
+    private Image decode(String posterURL) {
+        String source = posterURL;
+        if (!posterURL.startsWith("file:")) {
+            File thumbnail = thumbnailCache.getThumbnail(posterURL);
+            if (thumbnail == null) {
+                return notFound;
+            }
+            source = thumbnail.toURI().toString();
+        }
+        PerfEvents.PosterDecode event = new PerfEvents.PosterDecode();
+        event.begin();
+        event.url = posterURL;
+        long start = System.nanoTime();
+        Image image = new Image(source, NodeManager.POSTER_WIDTH, 0, true, true);
+        Metrics.INSTANCE.posterDecodeTime.recordSince(start);
+        event.commit();
+        if (image.isError() || image.getWidth() == 0) { // URL is bad
+            return notFound;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,102 @@
+package main;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fills .movieBrowserCache with metadata and poster thumbnails without starting the GUI, so the first interactive
+// launch starts warm. Run it from the library directory, like the app:
+//   java -cp MovieBrowser.jar main.Prewarm
+public class Prewarm {
+    private static final long REPORT_INTERVAL_MILLIS = 1000;
+
+    private final AtomicInteger resolved = new AtomicInteger();
+    private final AtomicInteger notResolved = new AtomicInteger();
+    private final AtomicInteger postersQueued = new AtomicInteger();
+    private final AtomicInteger postersDone = new AtomicInteger();
+    private final AtomicInteger postersFailed = new AtomicInteger();
+    private long startNanos;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        new Prewarm().run();
+    }
+
+    private void run() throws Exception {
+        startNanos = System.nanoTime();
+        Metrics.register(null);
+        FileManager fileManager = new FileManager();
+        fileManager.createCacheIfNoneExists();
+        fileManager.openMetadataStore();
+
+        LibraryScanner.ScanResult scanResult = fileManager.scanLibrary();
+        System.out.printf("Scanned %d movie files and %d subtitle files in %d ms%n", scanResult.movieFiles.size(),
+                scanResult.subtitleFiles.size(), elapsedMillis());
+        FileNameParser.Report parseReport = new FileNameParser.Report();
+        List<MetadataResolver.Request> requests = MetadataResolver.createRequests(scanResult.movieFiles,
+                MetadataResolver.subtitleFilePaths(scanResult.subtitleFiles), parseReport);
+        fileManager.writeUnmatchedReport(parseReport);
+        System.out.println(parseReport);
+
+        ThumbnailCache thumbnailCache = fileManager.getThumbnailCache();
+        ExecutorService posterPool = Executors.newFixedThreadPool(Integer.getInteger("movieBrowser.posterThreads", 4),
+                MetadataResolver.daemonThreadFactory("poster-prewarm"));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                MetadataResolver.daemonThreadFactory("prewarm-progress"));
+        reporter.scheduleAtFixedRate(() -> report(requests.size()), REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        // Posters are fetched as soon as their movie resolves rather than after all metadata is in
+        Library library = new MetadataResolver(fileManager).resolve(requests, (request, movieInfo) -> {
+            if (movieInfo == null || !fileManager.isMetadataCached(request.file)) {
+                notResolved.incrementAndGet();
+            } else {
+                resolved.incrementAndGet();
+                if (isRemotePoster(movieInfo.posterURL)) {
+                    postersQueued.incrementAndGet();
+                    posterPool.execute(() -> {
+                        if (thumbnailCache.getThumbnail(movieInfo.posterURL) == null) {
+                            postersFailed.incrementAndGet();
+                        }
+                        postersDone.incrementAndGet();
+                    });
+                }
+            }
+        });
+        long metadataMillis = elapsedMillis();
+        posterPool.shutdown();
+        posterPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        reporter.shutdownNow();
+        fileManager.closeMetadataStore();
+
+        long totalMillis = elapsedMillis();
+        System.out.printf("Resolved %d of %d titles (%d failed) in %d ms, %.1f titles/s%n",
+                library.movieInfos.size(), requests.size(), notResolved.get(), metadataMillis,
+                perSecond(requests.size(), metadataMillis));
+        System.out.printf("Cached %d of %d posters (%d failed), done in %d ms, %.1f posters/s%n",
+                postersDone.get() - postersFailed.get(), postersQueued.get(), postersFailed.get(), totalMillis,
+                perSecond(postersDone.get(), totalMillis));
+    }
+
+    private void report(int total) {
+        long millis = elapsedMillis();
+        int done = resolved.get() + notResolved.get();
+        System.out.printf("[%5.1fs] metadata %d/%d (%.1f/s), posters %d/%d (%.1f/s)%n", millis / 1000.0, done, total,
+                perSecond(done, millis), postersDone.get(), postersQueued.get(), perSecond(postersDone.get(), millis));
+    }
+
+    private static boolean isRemotePoster(String posterURL) {
+        return !posterURL.equals("N/A") && !posterURL.startsWith("file:");
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static double perSecond(int count, long millis) {
+        return millis == 0 ? 0 : count * 1000.0 / millis;
+    }
+}
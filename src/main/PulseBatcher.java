@@ -0,0 +1,56 @@
+package main;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Collects items from background threads and hands them to the FX thread at most once per pulse, so a burst of
+// results costs one re-filter of the grid instead of one Platform.runLater each. The timer only runs while items
+// are waiting, so an idle batcher does not keep the pulse going.
+class PulseBatcher<T> {
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Consumer<List<T>> consumer;
+    private final AnimationTimer timer;
+
+    PulseBatcher(Consumer<List<T>> consumer) {
+        this.consumer = consumer;
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                flush();
+                scheduled.set(false);
+                if (queue.isEmpty()) {
+                    stop();
+                } else {
+                    scheduled.set(true); // Raced with add(), stay on for the next pulse
+                }
+            }
+        };
+    }
+
+    // Any thread
+    void add(T item) {
+        queue.add(item);
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
+        }
+    }
+
+    // FX thread; applies whatever is waiting right away
+    void flush() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        List<T> batch = new ArrayList<>();
+        for (T item = queue.poll(); item != null; item = queue.poll()) {
+            batch.add(item);
+        }
+        consumer.accept(batch);
+    }
+}
@@ -0,0 +1,171 @@
+package main;
+
+import java.util.*;
+
+// Inverted index from search tokens to sorted posting lists of movie ids. A query term matches every token it is a
+// prefix of, and the results of all terms are intersected.
+class SearchIndex {
+    private static final int[] NO_RESULTS = new int[0];
+
+    // Sorted ids, grown in place
+    static class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) { // Ids are normally handed out in increasing order
+                int position = Arrays.binarySearch(ids, 0, size, id);
+                if (position >= 0) {
+                    return;
+                }
+                insert(-position - 1, id);
+                return;
+            }
+            insert(size, id);
+        }
+
+        boolean remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        private void insert(int position, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+    }
+
+    private final HashMap<String, Postings> postings = new HashMap<>();
+    private String[] sortedTerms = new String[0];
+    private boolean termsDirty;
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    void add(MovieInfo movieInfo) {
+        for (int tagId : movieInfo.tagIds) {
+            String tag = Dictionary.TOKENS.get(tagId);
+            Postings list = postings.get(tag);
+            if (list == null) {
+                list = new Postings();
+                postings.put(tag, list);
+                termsDirty = true;
+            }
+            list.add(movieInfo.id);
+        }
+    }
+
+    void remove(MovieInfo movieInfo) {
+        for (int tagId : movieInfo.tagIds) {
+            String tag = Dictionary.TOKENS.get(tagId);
+            Postings list = postings.get(tag);
+            if (list != null && list.remove(movieInfo.id) && list.size == 0) {
+                postings.remove(tag);
+                termsDirty = true;
+            }
+        }
+    }
+
+    // Returns the sorted ids of movies matching every term of the query
+    int[] search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return NO_RESULTS;
+        }
+        if (termsDirty) {
+            sortedTerms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(sortedTerms);
+            termsDirty = false;
+        }
+
+        List<int[]> matches = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            int[] termMatches = matchPrefix(term);
+            if (termMatches.length == 0) {
+                return NO_RESULTS;
+            }
+            matches.add(termMatches);
+        }
+        matches.sort(Comparator.comparingInt(ids -> ids.length));
+        int[] result = matches.get(0);
+        int resultSize = result.length;
+        for (int i = 1; i < matches.size() && resultSize > 0; i++) {
+            int[] intersection = new int[resultSize];
+            resultSize = intersect(result, resultSize, matches.get(i), intersection);
+            result = intersection;
+        }
+        return resultSize == result.length ? result : Arrays.copyOf(result, resultSize);
+    }
+
+    void search(String query, BitSet out) {
+        out.clear();
+        for (int id : search(query)) {
+            out.set(id);
+        }
+    }
+
+    private int[] matchPrefix(String prefix) {
+        int first = Arrays.binarySearch(sortedTerms, prefix);
+        if (first < 0) {
+            first = -first - 1;
+        }
+        int last = first;
+        while (last < sortedTerms.length && sortedTerms[last].startsWith(prefix)) {
+            last++;
+        }
+        if (last == first) {
+            return NO_RESULTS;
+        }
+        if (last - first == 1) {
+            Postings list = postings.get(sortedTerms[first]);
+            return Arrays.copyOf(list.ids, list.size);
+        }
+
+        // Union of several posting lists; a bitset avoids a k-way merge
+        BitSet union = new BitSet();
+        for (int i = first; i < last; i++) {
+            Postings list = postings.get(sortedTerms[i]);
+            for (int j = 0; j < list.size; j++) {
+                union.set(list.ids[j]);
+            }
+        }
+        int[] ids = new int[union.cardinality()];
+        int count = 0;
+        for (int id = union.nextSetBit(0); id >= 0; id = union.nextSetBit(id + 1)) {
+            ids[count++] = id;
+        }
+        return ids;
+    }
+
+    private static int intersect(int[] a, int aSize, int[] b, int[] out) {
+        int i = 0, j = 0, count = 0;
+        while (i < aSize && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,336 @@
+package main;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+// "More like this": the NEIGHBOURS most similar movies of every movie, kept in a table so showing them is a lookup.
+// Similarity weighs shared genres, director and plot terms, and how close year, runtime and rating are. Only movies
+// sharing the director, an uncommon plot term, or the exact genres within a few years are scored as candidates, so
+// the table costs n times a bounded number of comparisons instead of n².
+//
+// build() ranks a whole library in parallel. Afterwards the index belongs to the thread that changes the library, see
+// LibraryQueries, and keeps up with movies added or removed one at a time.
+class SimilarityIndex {
+    static final int NEIGHBOURS = 12;
+    // A term or director shared by more movies than this picks no candidates, though it still counts in the score
+    private static final int MAX_CANDIDATE_POSTINGS = 200;
+    private static final int MAX_CANDIDATES = 300;
+    // Movies with the same genres, nearest in year on either side, that are always candidates
+    private static final int YEAR_WINDOW = 40;
+    private static final int MAX_PLOT_TERMS = 24;
+    private static final float GENRE_WEIGHT = 3, DIRECTOR_WEIGHT = 2, PLOT_WEIGHT = 3;
+    private static final float YEAR_WEIGHT = 1, RUNTIME_WEIGHT = 0.5f, RATING_WEIGHT = 1;
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList("the", "and", "for", "with", "his",
+            "her", "their", "they", "who", "when", "from", "into", "that", "this", "has", "have", "after", "while",
+            "but", "are", "was", "him", "she", "its", "one", "two", "out", "all", "only", "must", "new", "about",
+            "where", "what", "which", "them", "will", "find", "finds", "life", "young", "man", "woman", "own", "not",
+            "becomes", "between", "being", "over", "through", "can", "years", "year", "get", "gets"));
+    private static final int[] NO_NEIGHBOURS = new int[0];
+
+    // What similarity looks at; 0, NaN and -1 mean unknown
+    private static class Features {
+        final long genreMask;
+        final int directorCode, year, runtime;
+        final float rating;
+        // Sorted hashes of distinct plot terms
+        final int[] terms;
+        // How rare each term was (idf) when the movie was indexed, and the length of that vector
+        float[] weights;
+        float norm;
+
+        Features(MovieInfo m) {
+            genreMask = m.genreMask;
+            String director = m.director();
+            directorCode = director.isEmpty() || director.equals("N/A") ? -1 : m.directorCode;
+            year = m.yearKey;
+            runtime = m.runtime;
+            rating = m.ratingKey;
+            terms = plotTerms(m.plot);
+        }
+    }
+
+    // Best first
+    private static class Neighbours {
+        final int[] ids = new int[NEIGHBOURS];
+        final float[] scores = new float[NEIGHBOURS];
+        int size;
+
+        void offer(int id, float score) {
+            int existing = indexOf(id);
+            if (existing >= 0) {
+                remove(existing);
+            }
+            if (size == NEIGHBOURS && score <= scores[size - 1]) {
+                return;
+            }
+            int position = size == NEIGHBOURS ? size - 1 : size++;
+            while (position > 0 && scores[position - 1] < score) {
+                ids[position] = ids[position - 1];
+                scores[position] = scores[position - 1];
+                position--;
+            }
+            ids[position] = id;
+            scores[position] = score;
+        }
+
+        int indexOf(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void remove(int position) {
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            System.arraycopy(scores, position + 1, scores, position, size - position - 1);
+            size--;
+        }
+    }
+
+    // By movie id; null for ids that are not in the index
+    private final ArrayList<Features> features = new ArrayList<>();
+    private final ArrayList<Neighbours> neighbours = new ArrayList<>();
+    private final HashMap<Integer, SearchIndex.Postings> termPostings = new HashMap<>();
+    private final HashMap<Integer, SearchIndex.Postings> directorPostings = new HashMap<>();
+    // Movies by their exact genres, each ordered by year then id, see yearKey
+    private final HashMap<Long, TreeSet<Long>> byGenres = new HashMap<>();
+    private int count;
+
+    static SimilarityIndex build(List<MovieInfo> movieInfos) {
+        SimilarityIndex index = new SimilarityIndex();
+        List<Features> extracted = Arrays.asList(movieInfos.parallelStream().map(Features::new)
+                .toArray(Features[]::new));
+        for (int i = 0; i < movieInfos.size(); i++) {
+            index.put(movieInfos.get(i).id, extracted.get(i));
+        }
+        extracted.parallelStream().forEach(index::weigh);
+        // Only reads the index, so the movies can be ranked side by side
+        Neighbours[] ranked = new Neighbours[index.features.size()];
+        IntStream.range(0, ranked.length).parallel().forEach(id -> {
+            Features f = index.features.get(id);
+            if (f != null) {
+                ranked[id] = index.rank(id, f, false);
+            }
+        });
+        for (int id = 0; id < ranked.length; id++) {
+            index.neighbours.set(id, ranked[id]);
+        }
+        return index;
+    }
+
+    boolean contains(int id) {
+        return id < features.size() && features.get(id) != null;
+    }
+
+    // Also offers the movie to each movie it was compared with, so their tables stay current
+    void add(MovieInfo movieInfo) {
+        Features f = new Features(movieInfo);
+        put(movieInfo.id, f);
+        weigh(f);
+        neighbours.set(movieInfo.id, rank(movieInfo.id, f, true));
+    }
+
+    void remove(int id) {
+        if (!contains(id)) {
+            return;
+        }
+        Features f = features.set(id, null);
+        count--;
+        if (f.directorCode >= 0) {
+            removePosting(directorPostings, f.directorCode, id);
+        }
+        for (int term : f.terms) {
+            removePosting(termPostings, term, id);
+        }
+        TreeSet<Long> sameGenres = byGenres.get(f.genreMask);
+        sameGenres.remove(yearKey(f.year, id));
+        if (sameGenres.isEmpty()) {
+            byGenres.remove(f.genreMask);
+        }
+        // Whoever listed it most likely is among its own neighbours; rank those again without it
+        Neighbours own = neighbours.set(id, null);
+        if (own != null) {
+            for (int i = 0; i < own.size; i++) {
+                int neighbour = own.ids[i];
+                Features neighbourFeatures = features.get(neighbour);
+                if (neighbourFeatures != null) {
+                    neighbours.set(neighbour, rank(neighbour, neighbourFeatures, false));
+                }
+            }
+        }
+    }
+
+    // Ids of the most similar movies, best first
+    int[] neighbours(int id) {
+        Neighbours list = id < neighbours.size() ? neighbours.get(id) : null;
+        if (list == null) {
+            return NO_NEIGHBOURS;
+        }
+        int[] ids = new int[list.size];
+        int size = 0;
+        for (int i = 0; i < list.size; i++) {
+            if (contains(list.ids[i])) {
+                ids[size++] = list.ids[i];
+            }
+        }
+        return size == ids.length ? ids : Arrays.copyOf(ids, size);
+    }
+
+    private void put(int id, Features f) {
+        while (features.size() <= id) {
+            features.add(null);
+            neighbours.add(null);
+        }
+        features.set(id, f);
+        count++;
+        if (f.directorCode >= 0) {
+            directorPostings.computeIfAbsent(f.directorCode, k -> new SearchIndex.Postings()).add(id);
+        }
+        for (int term : f.terms) {
+            termPostings.computeIfAbsent(term, k -> new SearchIndex.Postings()).add(id);
+        }
+        byGenres.computeIfAbsent(f.genreMask, k -> new TreeSet<>()).add(yearKey(f.year, id));
+    }
+
+    private void weigh(Features f) {
+        float[] weights = new float[f.terms.length];
+        double sumOfSquares = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = (float) Math.log((double) count / termPostings.get(f.terms[i]).size);
+            sumOfSquares += weights[i] * weights[i];
+        }
+        f.weights = weights;
+        f.norm = (float) Math.sqrt(sumOfSquares);
+    }
+
+    private Neighbours rank(int id, Features f, boolean offerBack) {
+        List<SearchIndex.Postings> sources = new ArrayList<>(f.terms.length + 1);
+        if (f.directorCode >= 0) {
+            sources.add(directorPostings.get(f.directorCode));
+        }
+        for (int term : f.terms) {
+            sources.add(termPostings.get(term));
+        }
+        // The rarest first: they say the most, and the candidate budget may run out
+        sources.sort(Comparator.comparingInt(p -> p.size));
+        int[] candidates = new int[MAX_CANDIDATES + 2 * YEAR_WINDOW];
+        int size = 0;
+        for (SearchIndex.Postings postings : sources) {
+            if (postings.size > MAX_CANDIDATE_POSTINGS || size + postings.size > MAX_CANDIDATES) {
+                break;
+            }
+            System.arraycopy(postings.ids, 0, candidates, size, postings.size);
+            size += postings.size;
+        }
+        TreeSet<Long> sameGenres = byGenres.get(f.genreMask);
+        Long key = yearKey(f.year, id);
+        Iterator<Long> earlier = sameGenres.headSet(key, false).descendingIterator();
+        Iterator<Long> later = sameGenres.tailSet(key, false).iterator();
+        for (int i = 0; i < YEAR_WINDOW; i++) {
+            if (earlier.hasNext()) {
+                candidates[size++] = (int) (long) earlier.next();
+            }
+            if (later.hasNext()) {
+                candidates[size++] = (int) (long) later.next();
+            }
+        }
+
+        // Sorted, so each candidate is scored once however many ways it was found
+        Arrays.sort(candidates, 0, size);
+        Neighbours best = new Neighbours();
+        for (int i = 0; i < size; i++) {
+            int other = candidates[i];
+            if (other == id || (i > 0 && other == candidates[i - 1])) {
+                continue;
+            }
+            float score = similarity(f, features.get(other));
+            if (score > 0) {
+                best.offer(other, score);
+                Neighbours theirs = neighbours.get(other);
+                if (offerBack && theirs != null) {
+                    theirs.offer(id, score);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static float similarity(Features a, Features b) {
+        float score = 0;
+        if (a.genreMask != 0 && b.genreMask != 0) {
+            score += GENRE_WEIGHT * Long.bitCount(a.genreMask & b.genreMask) / Long.bitCount(a.genreMask | b.genreMask);
+        }
+        if (a.directorCode >= 0 && a.directorCode == b.directorCode) {
+            score += DIRECTOR_WEIGHT;
+        }
+        score += PLOT_WEIGHT * termSimilarity(a, b);
+        if (a.year != 0 && b.year != 0) {
+            score += YEAR_WEIGHT * Math.max(0, 1 - Math.abs(a.year - b.year) / 20f);
+        }
+        if (a.runtime != 0 && b.runtime != 0) {
+            score += RUNTIME_WEIGHT * Math.max(0, 1 - Math.abs(a.runtime - b.runtime) / 60f);
+        }
+        if (!Float.isNaN(a.rating) && !Float.isNaN(b.rating)) {
+            score += RATING_WEIGHT * Math.max(0, 1 - Math.abs(a.rating - b.rating) / 3);
+        }
+        return score;
+    }
+
+    // Cosine of the two movies' idf-weighted term vectors, 0..1
+    private static float termSimilarity(Features a, Features b) {
+        if (a.norm == 0 || b.norm == 0) {
+            return 0;
+        }
+        float dot = 0;
+        int i = 0, j = 0;
+        while (i < a.terms.length && j < b.terms.length) {
+            if (a.terms[i] < b.terms[j]) {
+                i++;
+            } else if (a.terms[i] > b.terms[j]) {
+                j++;
+            } else {
+                dot += a.weights[i++] * b.weights[j++];
+            }
+        }
+        return dot / (a.norm * b.norm);
+    }
+
+    private static int[] plotTerms(String plot) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String token : SearchIndex.tokenize(plot)) {
+            if (token.length() > 2 && !STOP_WORDS.contains(token)) {
+                distinct.add(token);
+                if (distinct.size() == MAX_PLOT_TERMS) {
+                    break;
+                }
+            }
+        }
+        int[] terms = new int[distinct.size()];
+        int size = 0;
+        for (String term : distinct) {
+            terms[size++] = term.hashCode();
+        }
+        Arrays.sort(terms);
+        // Two terms with the same hash count as one
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || terms[unique - 1] != terms[i]) {
+                terms[unique++] = terms[i];
+            }
+        }
+        return unique == size ? terms : Arrays.copyOf(terms, unique);
+    }
+
+    private static void removePosting(HashMap<Integer, SearchIndex.Postings> postings, int key, int id) {
+        SearchIndex.Postings list = postings.get(key);
+        if (list != null && list.remove(id) && list.size == 0) {
+            postings.remove(key);
+        }
+    }
+
+    private static long yearKey(int year, int id) {
+        return (long) year << 32 | id;
+    }
+}
@@ -0,0 +1,56 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// One precomputed permutation of movie ids per sort order, so showing a filtered set in any order is a single
+// linear walk instead of a sort. Each permutation is rebuilt lazily, the first time its order is asked for after the
+// library changed, so streaming movies in only re-sorts by the order on screen.
+class SortIndex {
+    private final List<MovieInfo> byId;
+    private final int[][] permutations;
+    private final boolean[] dirty;
+
+    SortIndex(List<MovieInfo> byId) {
+        this.byId = byId;
+        permutations = new int[SortOrder.values().length][];
+        dirty = new boolean[permutations.length];
+        invalidate();
+    }
+
+    void invalidate() {
+        Arrays.fill(dirty, true);
+    }
+
+    // Returns the movies whose ids are set in `ids`, in the given order
+    List<MovieInfo> order(SortOrder sortOrder, BitSet ids) {
+        if (dirty[sortOrder.ordinal()]) {
+            rebuild(sortOrder);
+        }
+        List<MovieInfo> ordered = new ArrayList<>(ids.cardinality());
+        for (int id : permutations[sortOrder.ordinal()]) {
+            if (ids.get(id)) {
+                ordered.add(byId.get(id));
+            }
+        }
+        return ordered;
+    }
+
+    private void rebuild(SortOrder sortOrder) {
+        List<MovieInfo> present = new ArrayList<>(byId.size());
+        for (MovieInfo movieInfo : byId) {
+            if (movieInfo != null) {
+                present.add(movieInfo);
+            }
+        }
+        present.sort(sortOrder.comparator);
+        int[] permutation = new int[present.size()];
+        for (int i = 0; i < permutation.length; i++) {
+            permutation[i] = present.get(i).id;
+        }
+        permutations[sortOrder.ordinal()] = permutation;
+        dirty[sortOrder.ordinal()] = false;
+    }
+}
@@ -0,0 +1,44 @@
+package main;
+
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+enum SortOrder {
+    YEAR_ASCENDING("Year (Low to High)", knownFirst(m -> m.yearKey > 0, Comparator.comparingInt(m -> m.yearKey))),
+    YEAR_DESCENDING("Year (High to Low)", knownFirst(m -> m.yearKey > 0, (m1, m2) -> Integer.compare(m2.yearKey, m1.yearKey))),
+    TITLE("Title", Comparator.comparing(m -> m.title)),
+    IMDB_RATING_ASCENDING("IMDB Rating (Low to High)",
+            knownFirst(m -> !Float.isNaN(m.ratingKey), (m1, m2) -> Float.compare(m1.ratingKey, m2.ratingKey))),
+    IMDB_RATING_DESCENDING("IMDB Rating (High to Low)",
+            knownFirst(m -> !Float.isNaN(m.ratingKey), (m1, m2) -> Float.compare(m2.ratingKey, m1.ratingKey))),
+    RUNTIME_ASCENDING("Runtime (Low to High)", knownFirst(m -> m.runtime > 0, Comparator.comparingInt(m -> m.runtime))),
+    RUNTIME_DESCENDING("Runtime (High to Low)", knownFirst(m -> m.runtime > 0, (m1, m2) -> Integer.compare(m2.runtime, m1.runtime))),
+    RESOLUTION_ASCENDING("Resolution (Low to High)",
+            knownFirst(m -> m.width > 0, Comparator.comparingLong(m -> (long) m.width * m.height))),
+    RESOLUTION_DESCENDING("Resolution (High to Low)",
+            knownFirst(m -> m.width > 0, (m1, m2) -> Long.compare((long) m2.width * m2.height, (long) m1.width * m1.height)));
+
+    private final String label;
+    final Comparator<MovieInfo> comparator;
+
+    SortOrder(String l, Comparator<MovieInfo> c) {
+        label = l;
+        comparator = c;
+    }
+
+    // Movies with an unknown ("N/A") key go last whichever direction is chosen
+    private static Comparator<MovieInfo> knownFirst(Predicate<MovieInfo> known, Comparator<MovieInfo> comparator) {
+        return (m1, m2) -> {
+            boolean known1 = known.test(m1), known2 = known.test(m2);
+            if (known1 != known2) {
+                return known1 ? -1 : 1;
+            }
+            return known1 ? comparator.compare(m1, m2) : 0;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
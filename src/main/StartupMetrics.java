@@ -0,0 +1,56 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+// Milestones of one start, in milliseconds since the application started; -1 until reached. Each is also emitted
+// as a JFR event and readable through Metrics.
+class StartupMetrics {
+    private final long startNanos;
+    private volatile long windowShownMillis = -1;
+    private volatile long firstPosterMillis = -1;
+    private volatile long libraryLoadedMillis = -1;
+
+    StartupMetrics() {
+        startNanos = System.nanoTime();
+    }
+
+    void windowShown() {
+        windowShownMillis = elapsedMillis();
+        milestone("windowShown", windowShownMillis);
+    }
+
+    void firstPosterShown() {
+        if (firstPosterMillis < 0) {
+            firstPosterMillis = elapsedMillis();
+            milestone("firstPosterShown", firstPosterMillis);
+        }
+    }
+
+    void libraryLoaded() {
+        libraryLoadedMillis = elapsedMillis();
+        milestone("libraryLoaded", libraryLoadedMillis);
+    }
+
+    long getWindowShownMillis() {
+        return windowShownMillis;
+    }
+
+    long getFirstPosterMillis() {
+        return firstPosterMillis;
+    }
+
+    long getLibraryLoadedMillis() {
+        return libraryLoadedMillis;
+    }
+
+    private static void milestone(String name, long sinceStartMillis) {
+        PerfEvents.StartupMilestone event = new PerfEvents.StartupMilestone();
+        event.milestone = name;
+        event.sinceStartMillis = sinceStartMillis;
+        event.commit();
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
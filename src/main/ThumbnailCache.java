@@ -0,0 +1,93 @@
+package main;
+
+import com.google.common.hash.Hashing;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+// Keeps posters downscaled to POSTER_WIDTH on disk, keyed by a hash of their URL. Uses AWT only, so it also works
+// without a JavaFX toolkit.
+class ThumbnailCache {
+    static final String THUMBNAIL_DIR = "posters";
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final File dir;
+
+    ThumbnailCache(File cacheDir) {
+        dir = new File(cacheDir, THUMBNAIL_DIR);
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+    }
+
+    File thumbnailFile(String url) {
+        return new File(dir, Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString() + ".jpg");
+    }
+
+    boolean contains(String url) {
+        return thumbnailFile(url).isFile();
+    }
+
+    // Returns the cached thumbnail, downloading and downscaling the poster first if needed, or null if it can't be had
+    File getThumbnail(String url) {
+        File thumbnail = thumbnailFile(url);
+        if (thumbnail.isFile()) {
+            return thumbnail;
+        }
+        PerfEvents.PosterFetch event = new PerfEvents.PosterFetch();
+        event.begin();
+        event.url = url;
+        long start = System.nanoTime();
+        try {
+            BufferedImage poster = download(url);
+            if (poster == null) { // Not an image
+                return null;
+            }
+            File tmp = File.createTempFile("poster", ".tmp", dir);
+            try {
+                ImageIO.write(downscale(poster), "jpg", tmp);
+                Files.move(tmp.toPath(), thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                tmp.delete();
+            }
+            event.succeeded = true;
+            return thumbnail;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            Metrics.INSTANCE.posterFetchTime.recordSince(start);
+            event.commit();
+        }
+    }
+
+    private static BufferedImage download(String url) throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        try (InputStream in = connection.getInputStream()) {
+            return ImageIO.read(in);
+        }
+    }
+
+    private static BufferedImage downscale(BufferedImage poster) {
+        int width = Math.min(NodeManager.POSTER_WIDTH, poster.getWidth());
+        int height = Math.max(1, Math.round(poster.getHeight() * (width / (float) poster.getWidth())));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(poster, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+}
@@ -0,0 +1,54 @@
+package main;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Stands in for VLC's RC interface: listens on the given port and appends "started <pid>" and then every command
+// line it receives, as "line <command>", to a log file shared by every fake started for one test
+public class FakeRcPlayer {
+    static List<String> command(Path log, int port) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(FakeRcPlayer.class.getName());
+        command.add(Integer.toString(port));
+        command.add(log.toString());
+        return command;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        Path log = Paths.get(args[1]);
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getByName(PlayerController.HOST))) {
+            append(log, "started " + ProcessHandle.current().pid());
+            while (true) {
+                try (Socket socket = server.accept();
+                     BufferedReader in = new BufferedReader(
+                             new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                    OutputStream out = socket.getOutputStream();
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        append(log, "line " + line);
+                        out.write("status change: ( play state: 3 )\r\n".getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    }
+                }
+            }
+        }
+    }
+
+    private static synchronized void append(Path log, String entry) throws IOException {
+        Files.write(log, (entry + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
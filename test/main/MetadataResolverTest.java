@@ -0,0 +1,170 @@
+package main;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+// Resolves a small library against a local stub of OMDb whose answers take latencyMillis each
+public class MetadataResolverTest {
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private volatile long latencyMillis;
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private Path library;
+    private Path cacheDir;
+    private FileManager fileManager;
+
+    @Before
+    public void setUp() throws IOException {
+        library = Files.createTempDirectory("library");
+        cacheDir = Files.createTempDirectory("cache");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            lookups.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latencyMillis);
+                String title = URLDecoder.decode(exchange.getRequestURI().getRawQuery().split("&")[0].substring(2),
+                        StandardCharsets.UTF_8);
+                byte[] body = ("{\"Title\":\"" + title + "\",\"Year\":\"2001\",\"Genre\":\"Drama\",\"Plot\":\"A plot\","
+                        + "\"Poster\":\"N/A\",\"imdbRating\":\"7.1\",\"Director\":\"Some One\","
+                        + "\"Runtime\":\"99 min\",\"Response\":\"True\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) { // The client gave up waiting
+                exchange.close();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (fileManager != null) {
+            fileManager.closeMetadataStore();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        deleteRecursively(library);
+        deleteRecursively(cacheDir);
+    }
+
+    @Test
+    public void resolvesConcurrentlyUpToTheLimitInRequestOrder() throws Exception {
+        latencyMillis = 200;
+        List<MetadataResolver.Request> requests = requests(12);
+        openFileManager(OmdbClient.DEFAULT_REQUEST_TIMEOUT);
+
+        long start = System.nanoTime();
+        Library resolved = new MetadataResolver(fileManager, 3).resolve(requests);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(12, lookups.get());
+        assertEquals(3, maxInFlight.get());
+        // Four rounds of three, not twelve lookups one after another
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 12 * latencyMillis);
+        assertEquals(titles(12), titlesOf(resolved));
+    }
+
+    @Test
+    public void servesTheSecondRunFromCache() throws Exception {
+        latencyMillis = 0;
+        List<MetadataResolver.Request> requests = requests(5);
+        openFileManager(OmdbClient.DEFAULT_REQUEST_TIMEOUT);
+        new MetadataResolver(fileManager, 2).resolve(requests);
+        fileManager.closeMetadataStore();
+
+        lookups.set(0);
+        openFileManager(OmdbClient.DEFAULT_REQUEST_TIMEOUT);
+        Library resolved = new MetadataResolver(fileManager, 2).resolve(requests);
+        assertEquals(0, lookups.get());
+        assertEquals(titles(5), titlesOf(resolved));
+    }
+
+    @Test
+    public void timesOutSlowLookupsAndShowsThemAsNotFound() throws Exception {
+        latencyMillis = 10000;
+        List<MetadataResolver.Request> requests = requests(2);
+        openFileManager(Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        Library resolved = new MetadataResolver(fileManager, 2).resolve(requests);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        // Every attempt, retries and backoff included, gave up long before the stub would have answered
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < latencyMillis);
+        assertEquals(2, resolved.movieInfos.size());
+        for (MovieInfo movieInfo : resolved.movieInfos) {
+            assertEquals(PosterLoader.NOT_FOUND_URL, movieInfo.posterURL);
+            assertFalse(fileManager.isMetadataCached(new File(movieInfo.absolutePath)));
+        }
+    }
+
+    private void openFileManager(Duration requestTimeout) throws IOException {
+        String apiURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/?t=%s&y=%s";
+        fileManager = new FileManager(new OmdbClient(apiURL, 1000, requestTimeout), cacheDir.toFile());
+        fileManager.createCacheIfNoneExists();
+        fileManager.openMetadataStore();
+    }
+
+    private List<MetadataResolver.Request> requests(int count) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String title : titles(count)) {
+            Path movie = library.resolve("2001 - " + title + ".mkv");
+            Files.write(movie, title.getBytes(StandardCharsets.UTF_8));
+            files.add(movie.toFile());
+        }
+        return MetadataResolver.createRequests(files, Collections.emptyMap(), null);
+    }
+
+    private static List<String> titles(int count) {
+        List<String> titles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            titles.add("Movie " + (char) ('A' + i));
+        }
+        return titles;
+    }
+
+    private static List<String> titlesOf(Library library) {
+        List<String> titles = new ArrayList<>();
+        for (MovieInfo movieInfo : library.movieInfos) {
+            titles.add(movieInfo.title);
+        }
+        return titles;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package main;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class MetadataStoreTest {
+    private Path cacheDir;
+    private File storeFile;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("cache");
+        storeFile = cacheDir.resolve(MetadataStore.STORE_FILE).toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(cacheDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void keepsEntriesAcrossReopening() throws IOException {
+        try (MetadataStore store = MetadataStore.open(cacheDir.toFile())) {
+            store.put("key", "value");
+        }
+        try (MetadataStore store = MetadataStore.open(cacheDir.toFile())) {
+            assertEquals("value", store.get("key"));
+        }
+    }
+
+    @Test
+    public void setsAsideAFileThatIsNotAStore() throws IOException {
+        byte[] garbage = "not a metadata store at all".getBytes(StandardCharsets.UTF_8);
+        Files.write(storeFile.toPath(), garbage);
+
+        assertStartsOver();
+        assertArrayEquals(garbage, Files.readAllBytes(badFile().toPath()));
+    }
+
+    @Test
+    public void setsAsideAStoreOfAnUnknownVersion() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(storeFile))) {
+            out.writeInt(0x4D424D44);
+            out.writeInt(99);
+        }
+
+        assertStartsOver();
+        assertTrue(badFile().exists());
+    }
+
+    private void assertStartsOver() throws IOException {
+        try (MetadataStore store = MetadataStore.open(cacheDir.toFile())) {
+            assertEquals(0, store.entryCount());
+            store.put("key", "value");
+        }
+        try (MetadataStore store = MetadataStore.open(cacheDir.toFile())) {
+            assertEquals("value", store.get("key"));
+        }
+    }
+
+    private File badFile() {
+        return new File(storeFile.getPath() + MetadataStore.BAD_FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,120 @@
+package main;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PlayerControllerTest {
+    private static final long WAIT_MILLIS = 15000;
+
+    private Path log;
+    private PlayerController controller;
+
+    @Before
+    public void setUp() throws IOException {
+        log = Files.createTempFile("fake-player", ".log");
+        controller = new PlayerController(port -> FakeRcPlayer.command(log, port));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        controller.close();
+        Files.deleteIfExists(log);
+    }
+
+    @Test
+    public void sendsAddAndEnqueueToOnePlayer() throws Exception {
+        controller.play("/movies/Alien.mkv", null);
+        controller.enqueue("/movies/Aliens.mkv", "/movies/Aliens.srt");
+
+        waitForEntries(3);
+        assertEquals(Arrays.asList(
+                "line add \"" + uri("/movies/Alien.mkv") + "\"",
+                "line enqueue \"" + uri("/movies/Aliens.mkv") + "\" \":sub-file=/movies/Aliens.srt\""),
+                lines());
+        assertEquals(1, startedPids().size());
+    }
+
+    @Test
+    public void restartsAKilledPlayerAndResendsTheCommand() throws Exception {
+        controller.play("/movies/Alien.mkv", null);
+        waitForEntries(2);
+        long firstPid = startedPids().get(0);
+        ProcessHandle first = ProcessHandle.of(firstPid).orElseThrow(AssertionError::new);
+        first.destroyForcibly();
+        first.onExit().get();
+
+        controller.enqueue("/movies/Aliens.mkv", null);
+        waitForEntries(4);
+        List<Long> pids = startedPids();
+        assertEquals(2, pids.size());
+        assertNotEquals(firstPid, (long) pids.get(1));
+        assertEquals("line enqueue \"" + uri("/movies/Aliens.mkv") + "\"", lines().get(1));
+    }
+
+    @Test
+    public void closeStopsThePlayer() throws Exception {
+        controller.play("/movies/Alien.mkv", null);
+        waitForEntries(2);
+        Optional<ProcessHandle> player = ProcessHandle.of(startedPids().get(0));
+
+        long start = System.nanoTime();
+        controller.close();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 1000);
+        // A player killed at the deadline may take a moment longer to go
+        if (player.isPresent()) {
+            player.get().onExit().get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String uri(String path) {
+        return new File(path).toPath().toUri().toASCIIString();
+    }
+
+    private List<String> entries() throws IOException {
+        return Files.readAllLines(log);
+    }
+
+    private List<String> lines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String entry : entries()) {
+            if (entry.startsWith("line ")) {
+                lines.add(entry);
+            }
+        }
+        return lines;
+    }
+
+    private List<Long> startedPids() throws IOException {
+        List<Long> pids = new ArrayList<>();
+        for (String entry : entries()) {
+            if (entry.startsWith("started ")) {
+                pids.add(Long.parseLong(entry.substring("started ".length())));
+            }
+        }
+        return pids;
+    }
+
+    private void waitForEntries(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (entries().size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Fake player logged only " + entries());
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package main;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+// Drives PosterLoader by hand: decodes and FX callbacks are queued and run when the test says so. The cache has no
+// budget, so any poster no view holds is evicted at once.
+public class PosterLoaderTest {
+    private final Deque<Runnable> decodes = new ArrayDeque<>();
+    private final Deque<Runnable> fxCallbacks = new ArrayDeque<>();
+    private final Map<String, Image> images = new HashMap<>();
+    private PosterImageCache cache;
+    private PosterLoader loader;
+
+    @Before
+    public void setUp() {
+        cache = new PosterImageCache(0);
+        loader = new PosterLoader(url -> images.computeIfAbsent(url, u -> new WritableImage(10, 15)),
+                new WritableImage(10, 15), cache, decodes::add, fxCallbacks::add);
+    }
+
+    @Test
+    public void showsTheDecodedPosterAndEvictsItOnceUnloaded() {
+        ImageView view = new ImageView();
+        loader.load("A", view);
+        runAll();
+
+        assertSame(images.get("A"), view.getImage());
+        loader.unload(view);
+        assertNull(cache.acquire("A"));
+    }
+
+    @Test
+    public void reloadingWhileTheFirstDecodeIsPendingCountsTheViewOnce() {
+        ImageView view = new ImageView();
+        loader.load("A", view);
+        loader.load("B", view);
+        loader.load("A", view);
+        runAll();
+
+        assertSame(images.get("A"), view.getImage());
+        assertNull("B is not shown anywhere", cache.acquire("B"));
+        loader.unload(view);
+        assertNull("A is off screen again", cache.acquire("A"));
+    }
+
+    @Test
+    public void keepsAPosterWhileAnotherViewStillShowsIt() {
+        ImageView first = new ImageView();
+        ImageView second = new ImageView();
+        loader.load("A", first);
+        runAll();
+        loader.load("A", second);
+
+        loader.unload(first);
+        assertNotNull(cache.acquire("A"));
+        cache.release("A");
+        loader.unload(second);
+        assertNull(cache.acquire("A"));
+    }
+
+    private void runAll() {
+        while (!decodes.isEmpty()) {
+            decodes.poll().run();
+        }
+        while (!fxCallbacks.isEmpty()) {
+            fxCallbacks.poll().run();
+        }
+    }
+}